@@ -0,0 +1,116 @@
+package net.jcip.examples;
+
+import java.util.concurrent.*;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * AttributeStoreBenchmark
+ * <p/>
+ * The authorization check of AttributeStore, BetterAttributeStore and
+ * ConcurrentAttributeStore, alone and with one writer per three checkers
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AttributeStoreBenchmark {
+    private static final String[] LOCATIONS = {"London", "Lisbon", "Berlin", "Boston", "Bangalore"};
+    private static final String[] REGEXPS = {"L.*", "B[a-z]+n", ".*o.*", "Boston|Berlin"};
+
+    @Param({"AttributeStore", "BetterAttributeStore", "ConcurrentAttributeStore"})
+    public String store;
+
+    @Param({"1024"})
+    public int users;
+
+    private Store target;
+    private String[] names;
+
+    // The stores share no interface; these are the two operations measured
+    private interface Store {
+        boolean userLocationMatches(String name, String regexp);
+
+        void put(String key, String value);
+    }
+
+    @Setup
+    public void setUp() {
+        switch (store) {
+            case "AttributeStore":
+                final AttributeStore plain = new AttributeStore();
+                target = new Store() {
+                    public boolean userLocationMatches(String name, String regexp) {
+                        return plain.userLocationMatches(name, regexp);
+                    }
+
+                    public void put(String key, String value) {
+                        plain.put(key, value);
+                    }
+                };
+                break;
+            case "BetterAttributeStore":
+                final BetterAttributeStore better = new BetterAttributeStore();
+                target = new Store() {
+                    public boolean userLocationMatches(String name, String regexp) {
+                        return better.userLocationMatches(name, regexp);
+                    }
+
+                    public void put(String key, String value) {
+                        better.put(key, value);
+                    }
+                };
+                break;
+            case "ConcurrentAttributeStore":
+                final ConcurrentAttributeStore concurrent = new ConcurrentAttributeStore();
+                target = new Store() {
+                    public boolean userLocationMatches(String name, String regexp) {
+                        return concurrent.userLocationMatches(name, regexp);
+                    }
+
+                    public void put(String key, String value) {
+                        concurrent.put(key, value);
+                    }
+                };
+                break;
+            default:
+                throw new IllegalArgumentException(store);
+        }
+        names = new String[users];
+        for (int i = 0; i < users; i++) {
+            names[i] = "user" + i;
+            target.put("users." + names[i] + ".location", LOCATIONS[i % LOCATIONS.length]);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class ThreadState {
+        final XorShift rnd = new XorShift();
+
+        int next(int n) {
+            return (rnd.next() >>> 1) % n;
+        }
+    }
+
+    @Benchmark
+    public boolean userLocationMatches(ThreadState t) {
+        return target.userLocationMatches(names[t.next(users)], REGEXPS[t.next(REGEXPS.length)]);
+    }
+
+    @Benchmark
+    @Group("readMostly")
+    @GroupThreads(3)
+    public boolean readMostlyMatches(ThreadState t) {
+        return userLocationMatches(t);
+    }
+
+    @Benchmark
+    @Group("readMostly")
+    @GroupThreads(1)
+    public void readMostlyPut(ThreadState t) {
+        int user = t.next(users);
+        target.put("users." + names[user] + ".location", LOCATIONS[t.next(LOCATIONS.length)]);
+    }
+}
@@ -0,0 +1,40 @@
+package net.jcip.examples;
+
+import org.openjdk.jmh.results.format.*;
+import org.openjdk.jmh.runner.*;
+import org.openjdk.jmh.runner.options.*;
+
+/**
+ * BenchmarkRunner
+ * <p/>
+ * Runs the JMH benchmarks of this package once per thread count, 1, 2, 4 and
+ * 8 by default, and writes the results of each sweep step to
+ * jmh-threads-N.json. Arguments are the thread counts to use instead; a
+ * benchmark group of two threads runs one pair per two threads.
+ * <p/>
+ * The include pattern may be narrowed with -Djmh.include, e.g.
+ * -Djmh.include=BoundedBufferBenchmark.
+ */
+public class BenchmarkRunner {
+    private static final int[] DEFAULT_THREADS = {1, 2, 4, 8};
+
+    public static void main(String[] args) throws RunnerException {
+        int[] threads = DEFAULT_THREADS;
+        if (args.length > 0) {
+            threads = new int[args.length];
+            for (int i = 0; i < args.length; i++)
+                threads[i] = Integer.parseInt(args[i]);
+        }
+        String include = System.getProperty("jmh.include",
+                "net\\.jcip\\.examples\\.(Map|ReadWriteMap|Nonblocking|BoundedBuffer|PseudoRandom|AttributeStore|ServerStatus)Benchmark\\.");
+        for (int t : threads) {
+            Options options = new OptionsBuilder()
+                    .include(include)
+                    .threads(t)
+                    .resultFormat(ResultFormatType.JSON)
+                    .result("jmh-threads-" + t + ".json")
+                    .build();
+            new Runner(options).run();
+        }
+    }
+}
@@ -17,6 +17,10 @@ public class BetterAttributeStore {
     @GuardedBy("this") private final Map<String, String>
             attributes = new HashMap<String, String>();
 
+    public synchronized void put(String key, String value) {
+        attributes.put(key, value);
+    }
+
     public boolean userLocationMatches(String name, String regexp) {
         String key = "users." + name + ".location";
         String location;
@@ -0,0 +1,113 @@
+package net.jcip.examples;
+
+import java.util.concurrent.*;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Control;
+
+/**
+ * BoundedBufferBenchmark
+ * <p/>
+ * Hand-off throughput of the bounded buffers between one producer and one
+ * consumer, with ArrayBlockingQueue as the baseline. Each group owns its own
+ * buffer, so running with more threads runs more independent pairs.
+ * <p/>
+ * Once the measurement stops the other side of the pair may already be gone,
+ * so a put on a full buffer or a take on an empty one is skipped rather than
+ * left to block forever. With a single producer and a single consumer per
+ * buffer, a put that finds the buffer not full cannot block, and neither can
+ * such a take.
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BoundedBufferBenchmark {
+    private static final Object ITEM = new Object();
+
+    @Param({"BoundedBuffer", "SemaphoreBoundedBuffer", "ConditionBoundedBuffer", "ArrayBlockingQueue"})
+    public String buffer;
+
+    @Param({"1", "100"})
+    public int capacity;
+
+    private Buffer target;
+
+    interface Buffer {
+        void put(Object x) throws InterruptedException;
+
+        Object take() throws InterruptedException;
+
+        boolean isEmpty();
+
+        boolean isFull();
+    }
+
+    @Setup
+    public void setUp() {
+        switch (buffer) {
+            case "BoundedBuffer": {
+                final BoundedBuffer<Object> b = new BoundedBuffer<Object>(capacity);
+                target = new Buffer() {
+                    public void put(Object x) throws InterruptedException { b.put(x); }
+                    public Object take() throws InterruptedException { return b.take(); }
+                    public boolean isEmpty() { return b.isEmpty(); }
+                    public boolean isFull() { return b.isFull(); }
+                };
+                break;
+            }
+            case "SemaphoreBoundedBuffer": {
+                final SemaphoreBoundedBuffer<Object> b = new SemaphoreBoundedBuffer<Object>(capacity);
+                target = new Buffer() {
+                    public void put(Object x) throws InterruptedException { b.put(x); }
+                    public Object take() throws InterruptedException { return b.take(); }
+                    public boolean isEmpty() { return b.isEmpty(); }
+                    public boolean isFull() { return b.isFull(); }
+                };
+                break;
+            }
+            case "ConditionBoundedBuffer": {
+                final ConditionBoundedBuffer<Object> b = new ConditionBoundedBuffer<Object>(capacity);
+                target = new Buffer() {
+                    public void put(Object x) throws InterruptedException { b.put(x); }
+                    public Object take() throws InterruptedException { return b.take(); }
+                    public boolean isEmpty() { return b.isEmpty(); }
+                    public boolean isFull() { return b.isFull(); }
+                };
+                break;
+            }
+            case "ArrayBlockingQueue": {
+                final ArrayBlockingQueue<Object> b = new ArrayBlockingQueue<Object>(capacity);
+                target = new Buffer() {
+                    public void put(Object x) throws InterruptedException { b.put(x); }
+                    public Object take() throws InterruptedException { return b.take(); }
+                    public boolean isEmpty() { return b.isEmpty(); }
+                    public boolean isFull() { return b.remainingCapacity() == 0; }
+                };
+                break;
+            }
+            default:
+                throw new IllegalArgumentException(buffer);
+        }
+    }
+
+    @Benchmark
+    @Group("handOff")
+    @GroupThreads(1)
+    public void put(Control control) throws InterruptedException {
+        if (control.stopMeasurement && target.isFull())
+            return;
+        target.put(ITEM);
+    }
+
+    @Benchmark
+    @Group("handOff")
+    @GroupThreads(1)
+    public Object take(Control control) throws InterruptedException {
+        if (control.stopMeasurement && target.isEmpty())
+            return null;
+        return target.take();
+    }
+}
@@ -11,7 +11,7 @@ import net.jcip.annotations.*;
  */
 @ThreadSafe
 public class CasCounter {
-    private SimulatedCAS value;
+    private final SimulatedCAS value = new SimulatedCAS();
 
     public int getValue() {
         return value.get();
@@ -0,0 +1,129 @@
+package net.jcip.examples;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import net.jcip.annotations.*;
+
+/**
+ * ConcurrentAttributeStore
+ * <p/>
+ * Eliminating the lock instead of narrowing it. Attributes are kept by
+ * section, name and attribute ("users", "alice", "location") in nested
+ * concurrent maps, so a lookup concatenates no key string, and reads take
+ * no lock. Patterns come from a bounded PatternCache instead of being
+ * compiled on every call. userLocationMatches allocates nothing once its
+ * pattern is cached.
+ */
+@ThreadSafe
+public class ConcurrentAttributeStore {
+    private static final int DEFAULT_PATTERN_CACHE_SIZE = 256;
+
+    private final ConcurrentMap<String, ConcurrentMap<String, ConcurrentMap<String, String>>>
+            sections = new ConcurrentHashMap<String, ConcurrentMap<String, ConcurrentMap<String, String>>>();
+    private final PatternCache patterns;
+
+    public ConcurrentAttributeStore() {
+        this(DEFAULT_PATTERN_CACHE_SIZE);
+    }
+
+    public ConcurrentAttributeStore(int patternCacheSize) {
+        patterns = new PatternCache(patternCacheSize);
+    }
+
+    public boolean userLocationMatches(String name, String regexp) {
+        String location = get("users", name, "location");
+        if (location == null)
+            return false;
+        else
+            return patterns.matches(regexp, location);
+    }
+
+    public String get(String section, String name, String attribute) {
+        ConcurrentMap<String, ConcurrentMap<String, String>> names = sections.get(section);
+        if (names == null)
+            return null;
+        ConcurrentMap<String, String> attributes = names.get(name);
+        return attributes == null ? null : attributes.get(attribute);
+    }
+
+    public String put(String section, String name, String attribute, String value) {
+        if (value == null)
+            throw new NullPointerException();
+        return attributes(section, name).put(attribute, value);
+    }
+
+    public String remove(String section, String name, String attribute) {
+        ConcurrentMap<String, ConcurrentMap<String, String>> names = sections.get(section);
+        if (names == null)
+            return null;
+        ConcurrentMap<String, String> attributes = names.get(name);
+        return attributes == null ? null : attributes.remove(attribute);
+    }
+
+    /** Flat key as in AttributeStore: "users.alice.location" */
+    public String get(String key) {
+        int first = firstDot(key), last = lastDot(key);
+        return get(key.substring(0, first), key.substring(first + 1, last), key.substring(last + 1));
+    }
+
+    public String put(String key, String value) {
+        int first = firstDot(key), last = lastDot(key);
+        return put(key.substring(0, first), key.substring(first + 1, last), key.substring(last + 1), value);
+    }
+
+    public String remove(String key) {
+        int first = firstDot(key), last = lastDot(key);
+        return remove(key.substring(0, first), key.substring(first + 1, last), key.substring(last + 1));
+    }
+
+    /** Weakly consistent copy keyed by flat keys */
+    public Map<String, String> toMap() {
+        Map<String, String> result = new HashMap<String, String>();
+        for (Map.Entry<String, ConcurrentMap<String, ConcurrentMap<String, String>>> section : sections.entrySet())
+            for (Map.Entry<String, ConcurrentMap<String, String>> name : section.getValue().entrySet())
+                for (Map.Entry<String, String> attribute : name.getValue().entrySet())
+                    result.put(section.getKey() + "." + name.getKey() + "." + attribute.getKey(),
+                            attribute.getValue());
+        return result;
+    }
+
+    /**
+     * Empty inner maps are never removed: a concurrent put could otherwise
+     * land in a map that has just been unlinked.
+     */
+    private ConcurrentMap<String, String> attributes(String section, String name) {
+        ConcurrentMap<String, ConcurrentMap<String, String>> names = sections.get(section);
+        if (names == null) {
+            ConcurrentMap<String, ConcurrentMap<String, String>> newNames
+                    = new ConcurrentHashMap<String, ConcurrentMap<String, String>>();
+            names = sections.putIfAbsent(section, newNames);
+            if (names == null)
+                names = newNames;
+        }
+        ConcurrentMap<String, String> attributes = names.get(name);
+        if (attributes == null) {
+            ConcurrentMap<String, String> newAttributes = new ConcurrentHashMap<String, String>();
+            attributes = names.putIfAbsent(name, newAttributes);
+            if (attributes == null)
+                attributes = newAttributes;
+        }
+        return attributes;
+    }
+
+    /** Throws IllegalArgumentException unless key is section.name.attribute */
+    static void checkKey(String key) {
+        firstDot(key);
+    }
+
+    private static int firstDot(String key) {
+        int i = key.indexOf('.');
+        if (i < 0 || i == key.lastIndexOf('.'))
+            throw new IllegalArgumentException("not section.name.attribute: " + key);
+        return i;
+    }
+
+    private static int lastDot(String key) {
+        return key.lastIndexOf('.');
+    }
+}
@@ -0,0 +1,128 @@
+package net.jcip.examples;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+import net.jcip.annotations.*;
+import net.jcip.examples.metrics.*;
+
+/**
+ * ConcurrentServerStatus
+ * <p/>
+ * ServerStatus with no locks at all. The sets are concurrent. The sizes
+ * are kept in striped counters, so they can be read without walking a set.
+ * The admin page reads a Snapshot instead of the live sets. A Snapshot is
+ * taken periodically and is internally consistent: its counts are the
+ * sizes of its own copies.
+ */
+@ThreadSafe
+public class ConcurrentServerStatus {
+    private final Set<String> users = ConcurrentHashMap.newKeySet();
+    private final Set<String> queries = ConcurrentHashMap.newKeySet();
+    private final StripedCounter userCount = new StripedCounter();
+    private final StripedCounter queryCount = new StripedCounter();
+    private final AtomicLong sequence = new AtomicLong();
+    private final AtomicReference<Snapshot> latest = new AtomicReference<Snapshot>(
+            new Snapshot(Collections.<String>emptySet(), Collections.<String>emptySet(),
+                    System.currentTimeMillis(), 0));
+
+    @Immutable
+    public static class Snapshot {
+        private final Set<String> users;
+        private final Set<String> queries;
+        private final long timestamp;
+        // Orders snapshots by when their copies started; the clock may tie or step back
+        private final long sequence;
+
+        Snapshot(Set<String> users, Set<String> queries, long timestamp, long sequence) {
+            this.users = users;
+            this.queries = queries;
+            this.timestamp = timestamp;
+            this.sequence = sequence;
+        }
+
+        public Set<String> getUsers() {
+            return users;
+        }
+
+        public Set<String> getQueries() {
+            return queries;
+        }
+
+        public int getUserCount() {
+            return users.size();
+        }
+
+        public int getQueryCount() {
+            return queries.size();
+        }
+
+        /** When the copy was started, in System.currentTimeMillis() time */
+        public long getTimestamp() {
+            return timestamp;
+        }
+    }
+
+    public void addUser(String u) {
+        if (users.add(u))
+            userCount.increment();
+    }
+
+    public void addQuery(String q) {
+        if (queries.add(q))
+            queryCount.increment();
+    }
+
+    public void removeUser(String u) {
+        if (users.remove(u))
+            userCount.decrement();
+    }
+
+    public void removeQuery(String q) {
+        if (queries.remove(q))
+            queryCount.decrement();
+    }
+
+    /** May lag concurrent adds and removes, but never drifts */
+    public long getUserCount() {
+        return userCount.sum();
+    }
+
+    public long getQueryCount() {
+        return queryCount.sum();
+    }
+
+    /**
+     * Copies both sets now. Each copy is weakly consistent: it has every
+     * element present throughout the copy and none absent throughout it.
+     * When calls overlap, getSnapshot() keeps whichever copy started last,
+     * so it never goes back in time.
+     */
+    public Snapshot takeSnapshot() {
+        long seq = sequence.incrementAndGet();
+        long timestamp = System.currentTimeMillis();
+        Snapshot s = new Snapshot(Collections.unmodifiableSet(new HashSet<String>(users)),
+                Collections.unmodifiableSet(new HashSet<String>(queries)),
+                timestamp, seq);
+        for (;;) {
+            Snapshot current = latest.get();
+            if (current.sequence > seq || latest.compareAndSet(current, s))
+                return s;
+        }
+    }
+
+    /** The most recent snapshot; costs nothing, unlike takeSnapshot */
+    public Snapshot getSnapshot() {
+        return latest.get();
+    }
+
+    /** Runs takeSnapshot() at a fixed rate on exec until the returned future is cancelled */
+    public ScheduledFuture<?> snapshotEvery(ScheduledExecutorService exec, long period, TimeUnit unit) {
+        return exec.scheduleAtFixedRate(new Runnable() {
+            public void run() {
+                takeSnapshot();
+            }
+        }, 0, period, unit);
+    }
+}
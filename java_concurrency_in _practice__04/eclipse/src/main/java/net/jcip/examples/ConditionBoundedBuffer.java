@@ -20,9 +20,37 @@ public class ConditionBoundedBuffer <T> {
     // CONDITION PREDICATE: notEmpty (count > 0)
     private final Condition notEmpty = lock.newCondition();
     private static final int BUFFER_SIZE = 100;
-    @GuardedBy("lock") private final T[] items = (T[]) new Object[BUFFER_SIZE];
+    @GuardedBy("lock") private final T[] items;
     @GuardedBy("lock") private int tail, head, count;
 
+    public ConditionBoundedBuffer() {
+        this(BUFFER_SIZE);
+    }
+
+    public ConditionBoundedBuffer(int capacity) {
+        if (capacity <= 0)
+            throw new IllegalArgumentException();
+        items = (T[]) new Object[capacity];
+    }
+
+    public boolean isEmpty() {
+        lock.lock();
+        try {
+            return count == 0;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public boolean isFull() {
+        lock.lock();
+        try {
+            return count == items.length;
+        } finally {
+            lock.unlock();
+        }
+    }
+
     // BLOCKS-UNTIL: notFull
     public void put(T x) throws InterruptedException {
         lock.lock();
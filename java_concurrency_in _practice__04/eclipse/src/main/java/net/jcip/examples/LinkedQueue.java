@@ -7,7 +7,7 @@ import net.jcip.annotations.*;
 /**
  * LinkedQueue
  * <p/>
- * Insertion in the Michael-Scott nonblocking queue algorithm
+ * Insertion and removal in the Michael-Scott nonblocking queue algorithm
  *
  * @author Brian Goetz and Tim Peierls
  */
@@ -24,11 +24,15 @@ public class LinkedQueue <E> {
         }
     }
 
-    private final LinkedQueue.Node<E> dummy = new LinkedQueue.Node<E>(null, null);
-    private final AtomicReference<LinkedQueue.Node<E>> head
-            = new AtomicReference<LinkedQueue.Node<E>>(dummy);
-    private final AtomicReference<LinkedQueue.Node<E>> tail
-            = new AtomicReference<LinkedQueue.Node<E>>(dummy);
+    // head always points at a dummy node; no field keeps the first one, so removed nodes can be collected
+    private final AtomicReference<LinkedQueue.Node<E>> head;
+    private final AtomicReference<LinkedQueue.Node<E>> tail;
+
+    public LinkedQueue() {
+        LinkedQueue.Node<E> dummy = new LinkedQueue.Node<E>(null, null);
+        head = new AtomicReference<LinkedQueue.Node<E>>(dummy);
+        tail = new AtomicReference<LinkedQueue.Node<E>>(dummy);
+    }
 
     public boolean put(E item) {
         LinkedQueue.Node<E> newNode = new LinkedQueue.Node<E>(item, null);
@@ -50,4 +54,23 @@ public class LinkedQueue <E> {
             }
         }
     }
+
+    public E poll() {
+        while (true) {
+            LinkedQueue.Node<E> curHead = head.get();
+            LinkedQueue.Node<E> curTail = tail.get();
+            LinkedQueue.Node<E> headNext = curHead.next.get();
+            if (curHead == head.get()) {
+                if (curHead == curTail) {
+                    if (headNext == null)
+                        return null;
+                    // Queue in intermediate state, advance tail
+                    tail.compareAndSet(curTail, headNext);
+                } else if (head.compareAndSet(curHead, headNext)) {
+                    // headNext is the new dummy; its item is ours
+                    return headNext.item;
+                }
+            }
+        }
+    }
 }
@@ -0,0 +1,107 @@
+package net.jcip.examples;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * MapBenchmark
+ * <p/>
+ * Lock striping versus a read-write lock versus ConcurrentHashMap, for gets,
+ * puts and a read-mostly mix of three readers per writer
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MapBenchmark {
+    @Param({"StripedMap", "ReadWriteMap", "ConcurrentHashMap"})
+    public String map;
+
+    @Param({"1024"})
+    public int keys;
+
+    private Access target;
+    private Integer[] keyObjects;
+
+    // The three maps share no interface; these are the two operations measured
+    interface Access {
+        Object get(Object key);
+
+        Object put(Object key, Object value);
+    }
+
+    @Setup
+    public void setUp() {
+        switch (map) {
+            case "StripedMap": {
+                final StripedMap m = new StripedMap(keys);
+                target = new Access() {
+                    public Object get(Object key) { return m.get(key); }
+                    public Object put(Object key, Object value) { return m.put(key, value); }
+                };
+                break;
+            }
+            case "ReadWriteMap": {
+                final ReadWriteMap<Object, Object> m = new ReadWriteMap<Object, Object>(new HashMap<Object, Object>());
+                target = new Access() {
+                    public Object get(Object key) { return m.get(key); }
+                    public Object put(Object key, Object value) { return m.put(key, value); }
+                };
+                break;
+            }
+            case "ConcurrentHashMap": {
+                final ConcurrentHashMap<Object, Object> m = new ConcurrentHashMap<Object, Object>();
+                target = new Access() {
+                    public Object get(Object key) { return m.get(key); }
+                    public Object put(Object key, Object value) { return m.put(key, value); }
+                };
+                break;
+            }
+            default:
+                throw new IllegalArgumentException(map);
+        }
+        keyObjects = new Integer[keys];
+        for (int i = 0; i < keys; i++) {
+            keyObjects[i] = i;
+            target.put(keyObjects[i], keyObjects[i]);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class ThreadState {
+        final XorShift rnd = new XorShift();
+
+        int nextKey(int keys) {
+            return (rnd.next() >>> 1) % keys;
+        }
+    }
+
+    @Benchmark
+    public Object get(ThreadState t) {
+        return target.get(keyObjects[t.nextKey(keys)]);
+    }
+
+    @Benchmark
+    public Object put(ThreadState t) {
+        Integer key = keyObjects[t.nextKey(keys)];
+        return target.put(key, key);
+    }
+
+    @Benchmark
+    @Group("readMostly")
+    @GroupThreads(3)
+    public Object readMostlyGet(ThreadState t) {
+        return get(t);
+    }
+
+    @Benchmark
+    @Group("readMostly")
+    @GroupThreads(1)
+    public Object readMostlyPut(ThreadState t) {
+        return put(t);
+    }
+}
@@ -3,6 +3,8 @@ package net.jcip.examples;
 import java.util.concurrent.atomic.*;
 import java.util.logging.*;
 
+import net.jcip.examples.metrics.*;
+
 /**
  * MyAppThread
  * <p/>
@@ -13,8 +15,9 @@ import java.util.logging.*;
 public class MyAppThread extends Thread {
     public static final String DEFAULT_NAME = "MyAppThread";
     private static volatile boolean debugLifecycle = false;
+    // Numbers the threads, so it must hand out unique values: not striped
     private static final AtomicInteger created = new AtomicInteger();
-    private static final AtomicInteger alive = new AtomicInteger();
+    private static final StripedCounter alive = new StripedCounter();
     private static final Logger log = Logger.getAnonymousLogger();
 
     public MyAppThread(Runnable r) {
@@ -37,10 +40,10 @@ public class MyAppThread extends Thread {
         boolean debug = debugLifecycle;
         if (debug) log.log(Level.FINE, "Created " + getName());
         try {
-            alive.incrementAndGet();
+            alive.increment();
             super.run();
         } finally {
-            alive.decrementAndGet();
+            alive.decrement();
             if (debug) log.log(Level.FINE, "Exiting " + getName());
         }
     }
@@ -50,7 +53,15 @@ public class MyAppThread extends Thread {
     }
 
     public static int getThreadsAlive() {
-        return alive.get();
+        return (int) alive.sum();
+    }
+
+    public static Gauge threadsAlive() {
+        return new Gauge() {
+            public long getValue() {
+                return alive.sum();
+            }
+        };
     }
 
     public static boolean getDebug() {
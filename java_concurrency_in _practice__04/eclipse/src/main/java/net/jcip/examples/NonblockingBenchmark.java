@@ -0,0 +1,92 @@
+package net.jcip.examples;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+import net.jcip.examples.metrics.*;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * NonblockingBenchmark
+ * <p/>
+ * Contended throughput of the Treiber stack, the Michael-Scott queue, the
+ * counter on simulated CAS and the metrics counters and histogram, each next
+ * to its java.util.concurrent counterpart.
+ * Every operation on a collection adds one element and removes one, so they
+ * stay small however long the run.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class NonblockingBenchmark {
+    private static final Object ITEM = new Object();
+
+    private final ConcurrentStack<Object> stack = new ConcurrentStack<Object>();
+    private final ConcurrentLinkedDeque<Object> deque = new ConcurrentLinkedDeque<Object>();
+    private final LinkedQueue<Object> queue = new LinkedQueue<Object>();
+    private final ConcurrentLinkedQueue<Object> concurrentQueue = new ConcurrentLinkedQueue<Object>();
+    private final CasCounter casCounter = new CasCounter();
+    private final AtomicInteger atomicCounter = new AtomicInteger();
+    private final StripedCounter stripedCounter = new StripedCounter();
+    private final LongAdder longAdder = new LongAdder();
+    private final LogHistogram histogram = new LogHistogram();
+    private final AtomicLongArray flatHistogram = new AtomicLongArray(64);
+
+    @Benchmark
+    public Object concurrentStackPushPop() {
+        stack.push(ITEM);
+        return stack.pop();
+    }
+
+    @Benchmark
+    public Object concurrentLinkedDequePushPop() {
+        deque.push(ITEM);
+        return deque.pollFirst();
+    }
+
+    @Benchmark
+    public Object linkedQueuePutPoll() {
+        queue.put(ITEM);
+        return queue.poll();
+    }
+
+    @Benchmark
+    public Object concurrentLinkedQueueOfferPoll() {
+        concurrentQueue.offer(ITEM);
+        return concurrentQueue.poll();
+    }
+
+    @Benchmark
+    public int casCounterIncrement() {
+        return casCounter.increment();
+    }
+
+    @Benchmark
+    public int atomicIntegerIncrement() {
+        return atomicCounter.incrementAndGet();
+    }
+
+    @Benchmark
+    public void stripedCounterIncrement() {
+        stripedCounter.increment();
+    }
+
+    @Benchmark
+    public void longAdderIncrement() {
+        longAdder.increment();
+    }
+
+    // Every thread records the same value, so all hit one bucket
+    @Benchmark
+    public void logHistogramRecord() {
+        histogram.record(1000);
+    }
+
+    @Benchmark
+    public long flatHistogramRecord() {
+        return flatHistogram.incrementAndGet(63 - Long.numberOfLeadingZeros(1000));
+    }
+}
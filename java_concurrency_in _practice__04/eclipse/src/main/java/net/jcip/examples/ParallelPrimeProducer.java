@@ -0,0 +1,215 @@
+package net.jcip.examples;
+
+import java.math.BigInteger;
+import java.util.*;
+import java.util.concurrent.*;
+
+import net.jcip.annotations.*;
+import net.jcip.examples.ch5.LaunderThrowable;
+
+/**
+ * ParallelPrimeProducer
+ * <p/>
+ * Multi-threaded PrimeProducer delivering primes in ordered batches. The
+ * number line from start on is cut into ranges that a pool of workers sieve
+ * concurrently, at most two ranges per worker ahead of the consumer; this
+ * thread hands the batches over in order. Ranges within 64 bits are sieved
+ * with a bitset of odd numbers, reused by each worker, and once the base
+ * primes no longer reach the square root of the range the survivors of the
+ * sieve are confirmed with BigInteger.isProbablePrime. Ranges past
+ * Long.MAX_VALUE fall back to BigInteger.nextProbablePrime.
+ * <p/>
+ * Cancellation works as in PrimeProducer: interrupting this thread stops it,
+ * and it interrupts the workers in turn, which check between ranges.
+ */
+public class ParallelPrimeProducer extends Thread {
+    // Odd numbers per range: 32KB of bits, so a range is sieved in cache
+    private static final int RANGE_BITS = 1 << 18;
+    private static final BigInteger RANGE_WIDTH = BigInteger.valueOf(2L * RANGE_BITS);
+    // Base primes only go this far; larger ranges also need a primality test
+    private static final int MAX_BASE_PRIME = 1 << 24;
+    // The certainty of BigInteger.nextProbablePrime
+    private static final int CERTAINTY = 100;
+    private static final BigInteger MAX_LONG = BigInteger.valueOf(Long.MAX_VALUE);
+
+    private static final ThreadLocal<long[]> bitsets = new ThreadLocal<long[]>() {
+        protected long[] initialValue() {
+            return new long[RANGE_BITS / 64];
+        }
+    };
+
+    private final BlockingQueue<Batch> queue;
+    private final int workers;
+    private final BigInteger start;
+    @GuardedBy("this") private int[] basePrimes = new int[0];
+    @GuardedBy("this") private int basePrimesLimit = 1;
+
+    public ParallelPrimeProducer(BlockingQueue<Batch> queue, int workers) {
+        this(queue, workers, BigInteger.TWO);
+    }
+
+    public ParallelPrimeProducer(BlockingQueue<Batch> queue, int workers, BigInteger start) {
+        if (workers <= 0 || start.signum() < 0)
+            throw new IllegalArgumentException();
+        this.queue = queue;
+        this.workers = workers;
+        this.start = start;
+    }
+
+    /**
+     * The primes of one range, in increasing order
+     */
+    @Immutable
+    public static final class Batch {
+        private final long[] primes;
+        private final BigInteger[] bigPrimes;
+
+        private Batch(long[] primes, BigInteger[] bigPrimes) {
+            this.primes = primes;
+            this.bigPrimes = bigPrimes;
+        }
+
+        public int size() {
+            return primes != null ? primes.length : bigPrimes.length;
+        }
+
+        public boolean fitsInLong() {
+            return primes != null;
+        }
+
+        public long getLong(int i) {
+            if (primes == null)
+                throw new ArithmeticException("prime beyond long range");
+            return primes[i];
+        }
+
+        public BigInteger get(int i) {
+            return primes != null ? BigInteger.valueOf(primes[i]) : bigPrimes[i];
+        }
+    }
+
+    public void run() {
+        ExecutorService exec = Executors.newFixedThreadPool(workers);
+        Deque<Future<Batch>> window = new ArrayDeque<Future<Batch>>();
+        long next = 0;
+        try {
+            while (window.size() < 2 * workers)
+                window.add(exec.submit(rangeTask(next++)));
+            while (!Thread.currentThread().isInterrupted()) {
+                Batch batch = window.remove().get();
+                window.add(exec.submit(rangeTask(next++)));
+                if (batch.size() > 0)
+                    queue.put(batch);
+            }
+        } catch (InterruptedException consumed) {
+            /* Allow thread to exit */
+        } catch (ExecutionException e) {
+            throw LaunderThrowable.launderThrowable(e.getCause());
+        } finally {
+            exec.shutdownNow();
+        }
+    }
+
+    public void cancel() {
+        interrupt();
+    }
+
+    private Callable<Batch> rangeTask(final long index) {
+        return new Callable<Batch>() {
+            public Batch call() throws InterruptedException {
+                if (Thread.currentThread().isInterrupted())
+                    throw new InterruptedException();
+                BigInteger lo = start.add(RANGE_WIDTH.multiply(BigInteger.valueOf(index)));
+                BigInteger hi = lo.add(RANGE_WIDTH);
+                if (hi.compareTo(MAX_LONG) <= 0)
+                    return sieve(lo.longValue(), hi.longValue());
+                return probe(lo, hi);
+            }
+        };
+    }
+
+    /** Primes in [lo, hi), for hi within long range */
+    Batch sieve(long lo, long hi) throws InterruptedException {
+        long first = lo | 1;
+        int length = (int) Math.max(0, (hi - first + 1) / 2);
+        long[] bits = bitsets.get();
+        int words = (length + 63) >>> 6;
+        Arrays.fill(bits, 0, words, -1L);
+        if ((length & 63) != 0)
+            bits[words - 1] = (1L << length) - 1;
+        if (first == 1 && length > 0)
+            bits[0] &= ~1L; // 1 is not prime
+
+        long root = (long) Math.sqrt((double) (hi - 1));
+        while (root * root > hi - 1)
+            root--;
+        int[] base = basePrimes((int) Math.min(root, MAX_BASE_PRIME));
+        for (int p : base) {
+            long square = (long) p * p;
+            if (square >= hi)
+                break;
+            long r = first % p;
+            long m = Math.max(square, r == 0 ? first : first - r + p);
+            if ((m & 1) == 0)
+                m += p;
+            for (long i = (m - first) >>> 1; i < length; i += p)
+                bits[(int) (i >>> 6)] &= ~(1L << i);
+        }
+
+        boolean confirm = root > MAX_BASE_PRIME;
+        int count = (lo <= 2 && hi > 2) ? 1 : 0;
+        for (int w = 0; w < words; w++)
+            count += Long.bitCount(bits[w]);
+        long[] primes = new long[count];
+        int n = 0;
+        if (lo <= 2 && hi > 2)
+            primes[n++] = 2;
+        for (int w = 0; w < words; w++) {
+            for (long b = bits[w]; b != 0; b &= b - 1) {
+                long candidate = first + 2L * (w * 64 + Long.numberOfTrailingZeros(b));
+                if (confirm) {
+                    if (Thread.currentThread().isInterrupted())
+                        throw new InterruptedException();
+                    if (!BigInteger.valueOf(candidate).isProbablePrime(CERTAINTY))
+                        continue;
+                }
+                primes[n++] = candidate;
+            }
+        }
+        return new Batch(n == primes.length ? primes : Arrays.copyOf(primes, n), null);
+    }
+
+    /** Primes in [lo, hi) one BigInteger at a time */
+    Batch probe(BigInteger lo, BigInteger hi) throws InterruptedException {
+        List<BigInteger> primes = new ArrayList<BigInteger>();
+        BigInteger p = lo.subtract(BigInteger.ONE);
+        while ((p = p.nextProbablePrime()).compareTo(hi) < 0) {
+            if (Thread.currentThread().isInterrupted())
+                throw new InterruptedException();
+            primes.add(p);
+        }
+        return new Batch(null, primes.toArray(new BigInteger[primes.size()]));
+    }
+
+    /** The odd primes up to at least limit, computed again only when a larger limit is needed */
+    private synchronized int[] basePrimes(int limit) {
+        if (limit <= basePrimesLimit)
+            return basePrimes;
+        int target = (int) Math.min(MAX_BASE_PRIME, Math.max(limit, 2L * basePrimesLimit));
+        boolean[] composite = new boolean[target + 1];
+        int[] primes = new int[16];
+        int count = 0;
+        for (int i = 3; i <= target; i += 2) {
+            if (!composite[i]) {
+                if (count == primes.length)
+                    primes = Arrays.copyOf(primes, count * 2);
+                primes[count++] = i;
+                for (long j = (long) i * i; j <= target; j += 2 * i)
+                    composite[(int) j] = true;
+            }
+        }
+        basePrimes = Arrays.copyOf(primes, count);
+        basePrimesLimit = target;
+        return basePrimes;
+    }
+}
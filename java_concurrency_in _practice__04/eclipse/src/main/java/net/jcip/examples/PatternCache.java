@@ -0,0 +1,106 @@
+package net.jcip.examples;
+
+import java.util.concurrent.*;
+import java.util.regex.*;
+
+import net.jcip.annotations.*;
+
+/**
+ * PatternCache
+ * <p/>
+ * Bounded cache of compiled regular expressions. Hits are lock-free and only
+ * set a reference bit. A miss compiles outside any lock and then, under the
+ * cache's lock, takes a free slot or runs a clock: the hand sweeps the slots
+ * from where it last stopped, clearing set bits, and evicts the first entry
+ * whose bit is already clear, so each miss costs constant amortized work.
+ * Each entry keeps one Matcher per thread, so once an expression and thread
+ * are warm, matching allocates nothing.
+ */
+@ThreadSafe
+public class PatternCache {
+    private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<String, Entry>();
+    @GuardedBy("this") private final Entry[] slots;
+    @GuardedBy("this") private int hand, used;
+
+    private static class Entry {
+        final String regexp;
+        final Pattern pattern;
+        final ThreadLocal<Matcher> matchers;
+        volatile boolean referenced = true;
+
+        Entry(String regexp, final Pattern pattern) {
+            this.regexp = regexp;
+            this.pattern = pattern;
+            this.matchers = new ThreadLocal<Matcher>() {
+                protected Matcher initialValue() {
+                    return pattern.matcher("");
+                }
+            };
+        }
+    }
+
+    public PatternCache(int capacity) {
+        if (capacity <= 0)
+            throw new IllegalArgumentException("capacity must be positive: " + capacity);
+        this.slots = new Entry[capacity];
+    }
+
+    public Pattern get(String regexp) {
+        return entry(regexp).pattern;
+    }
+
+    /**
+     * Same result as Pattern.matches(regexp, input). The thread's Matcher is
+     * reset afterwards, so it does not keep input reachable.
+     */
+    public boolean matches(String regexp, CharSequence input) {
+        Matcher m = entry(regexp).matchers.get();
+        try {
+            return m.reset(input).matches();
+        } finally {
+            m.reset("");
+        }
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    private Entry entry(String regexp) {
+        Entry e = entries.get(regexp);
+        if (e != null) {
+            if (!e.referenced)
+                e.referenced = true;
+            return e;
+        }
+        Pattern pattern = Pattern.compile(regexp);
+        synchronized (this) {
+            e = entries.get(regexp);
+            if (e != null)
+                return e;
+            e = new Entry(regexp, pattern);
+            slots[used < slots.length ? used++ : victim()] = e;
+            entries.put(regexp, e);
+            return e;
+        }
+    }
+
+    /**
+     * Evicts an entry and returns its slot. After one full turn the hand
+     * evicts regardless, so busy readers cannot keep the sweep going.
+     */
+    @GuardedBy("this")
+    private int victim() {
+        for (int scanned = 0; ; scanned++) {
+            int slot = hand;
+            hand = (hand + 1) % slots.length;
+            Entry e = slots[slot];
+            if (e.referenced && scanned < slots.length) {
+                e.referenced = false;
+            } else {
+                entries.remove(e.regexp);
+                return slot;
+            }
+        }
+    }
+}
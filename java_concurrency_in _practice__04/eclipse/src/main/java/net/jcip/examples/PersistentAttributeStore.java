@@ -0,0 +1,403 @@
+package net.jcip.examples;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.charset.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import java.util.logging.*;
+import java.util.regex.*;
+import java.util.zip.*;
+
+import net.jcip.annotations.*;
+
+/**
+ * PersistentAttributeStore
+ * <p/>
+ * A ConcurrentAttributeStore that survives restarts. Reads go straight to
+ * the in-memory store, as before. Each write is first appended to a
+ * memory-mapped log and then applied in memory.
+ * <p/>
+ * The directory holds snapshot-N files and log-N files. log-N holds the
+ * writes made after snapshot-N was taken. compact() starts log-(N+1), then
+ * writes snapshot-(N+1) to a temporary file and renames it into place, and
+ * only then deletes the older files. Recovery loads the newest snapshot and
+ * replays every log from that generation on. So a crash at any point during
+ * compaction loses nothing.
+ * <p/>
+ * The directory is forced after every file is created or renamed, and
+ * before anything is deleted, so the deletes cannot reach the disk ahead of
+ * the rename that makes them safe.
+ * <p/>
+ * A log that would outgrow one mapping (2GB) is rolled over to the next
+ * generation without a snapshot. Recovery replays it like any other log.
+ * <p/>
+ * Each record carries a CRC, and replay stops at the first torn or zeroed
+ * record. A write survives a process crash as soon as put returns, because
+ * it is in the page cache. sync() forces it to the device. Only one instance
+ * at a time may open a directory; it holds a lock on its lock file until
+ * close(). Once closed, a store still answers reads from memory, but writes,
+ * sync() and compact() throw ClosedChannelException, since another instance
+ * may own the directory by then.
+ */
+@ThreadSafe
+public class PersistentAttributeStore implements Closeable {
+    private static final String SNAPSHOT = "snapshot-", LOG = "log-", TMP = ".tmp", LOCK = "lock";
+    private static final int INITIAL_LOG_SIZE = 1 << 20;
+    private static final int MAX_LOG_SIZE = Integer.MAX_VALUE;
+    private static final int HEADER = 8; // payload length, CRC of payload
+    private static final byte PUT = 1, REMOVE = 2;
+    private static final Pattern FILE_NAME = Pattern.compile("(snapshot|log)-(\\d+)");
+
+    private static final Logger logger = Logger.getLogger(PersistentAttributeStore.class.getName());
+
+    private final ConcurrentAttributeStore store = new ConcurrentAttributeStore();
+    private final Path directory;
+    private final FileChannel lockChannel;
+    private final Object compactLock = new Object();
+
+    @GuardedBy("this") private long generation;
+    @GuardedBy("this") private FileChannel logChannel;
+    @GuardedBy("this") private MappedByteBuffer log;
+    @GuardedBy("this") private boolean closed;
+
+    public PersistentAttributeStore(Path directory) throws IOException {
+        this.directory = Files.createDirectories(directory);
+        lockChannel = FileChannel.open(directory.resolve(LOCK), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE);
+        try {
+            FileLock lock;
+            try {
+                lock = lockChannel.tryLock();
+            } catch (OverlappingFileLockException e) {
+                lock = null; // held by another instance in this JVM
+            }
+            if (lock == null)
+                throw new IOException(directory + " is already open");
+            recover();
+        } catch (IOException | RuntimeException e) {
+            if (logChannel != null)
+                logChannel.close();
+            lockChannel.close();
+            throw e;
+        }
+    }
+
+    public boolean userLocationMatches(String name, String regexp) {
+        return store.userLocationMatches(name, regexp);
+    }
+
+    public String get(String section, String name, String attribute) {
+        return store.get(section, name, attribute);
+    }
+
+    public String get(String key) {
+        return store.get(key);
+    }
+
+    /** key is section.name.attribute, as in ConcurrentAttributeStore */
+    public synchronized String put(String key, String value) throws IOException {
+        if (value == null)
+            throw new NullPointerException();
+        ConcurrentAttributeStore.checkKey(key);
+        ensureOpen();
+        append(PUT, key, value);
+        return store.put(key, value);
+    }
+
+    public synchronized String remove(String key) throws IOException {
+        ConcurrentAttributeStore.checkKey(key);
+        ensureOpen();
+        append(REMOVE, key, null);
+        return store.remove(key);
+    }
+
+    /** Forces logged writes to the storage device */
+    public synchronized void sync() throws IOException {
+        ensureOpen();
+        log.force();
+    }
+
+    /**
+     * Writes a snapshot of the current state and drops the logs it
+     * supersedes. Writers are only blocked while the state is copied and
+     * the log is switched.
+     */
+    public void compact() throws IOException {
+        synchronized (compactLock) {
+            Map<String, String> state;
+            long next;
+            synchronized (this) {
+                ensureOpen();
+                state = store.toMap();
+                next = generation + 1;
+                openLog(next);
+            }
+            writeSnapshot(next, state);
+            syncDirectory();
+            for (Path file : files())
+                if (generationOf(file) < next)
+                    Files.deleteIfExists(file);
+        }
+    }
+
+    /**
+     * Runs compact() at a fixed rate on exec until the returned future is
+     * cancelled or the store is closed. A failed compaction is logged and
+     * retried next period; rethrowing it would cancel the schedule.
+     */
+    public ScheduledFuture<?> compactEvery(ScheduledExecutorService exec, long period, TimeUnit unit) {
+        final AtomicReference<ScheduledFuture<?>> self = new AtomicReference<ScheduledFuture<?>>();
+        ScheduledFuture<?> future = exec.scheduleAtFixedRate(new Runnable() {
+            public void run() {
+                if (isClosed()) {
+                    // null only if this run beat the assignment below
+                    ScheduledFuture<?> f = self.get();
+                    if (f != null)
+                        f.cancel(false);
+                    return;
+                }
+                try {
+                    compact();
+                } catch (IOException | RuntimeException e) {
+                    if (!isClosed()) // closed meanwhile; the next run stops
+                        logger.log(Level.WARNING, "compaction of " + directory + " failed", e);
+                }
+            }
+        }, period, period, unit);
+        self.set(future);
+        return future;
+    }
+
+    /**
+     * Waits for a compaction in progress, so none can touch the directory
+     * after its lock is released
+     */
+    public void close() throws IOException {
+        synchronized (compactLock) {
+            synchronized (this) {
+                if (closed)
+                    return;
+                closed = true;
+                try {
+                    log.force();
+                    logChannel.close();
+                } finally {
+                    lockChannel.close(); // releases the lock
+                }
+            }
+        }
+    }
+
+    private synchronized boolean isClosed() {
+        return closed;
+    }
+
+    @GuardedBy("this")
+    private void ensureOpen() throws ClosedChannelException {
+        if (closed)
+            throw new ClosedChannelException();
+    }
+
+    private void recover() throws IOException {
+        long snapshot = -1;
+        List<Long> logs = new ArrayList<Long>();
+        for (Path file : files()) {
+            String name = file.getFileName().toString();
+            if (name.endsWith(TMP))
+                Files.delete(file); // an interrupted compaction
+            else if (name.startsWith(SNAPSHOT))
+                snapshot = Math.max(snapshot, generationOf(file));
+            else
+                logs.add(generationOf(file));
+        }
+        Collections.sort(logs);
+        if (snapshot >= 0)
+            replaySnapshot(directory.resolve(SNAPSHOT + snapshot));
+        long last = Math.max(snapshot, 0);
+        for (long g : logs)
+            if (g >= last) {
+                replay(map(directory.resolve(LOG + g), FileChannel.MapMode.READ_ONLY), store);
+                last = g;
+            }
+        synchronized (this) {
+            openLog(last);
+        }
+    }
+
+    /**
+     * A snapshot may be larger than one mapping, so it is mapped in windows,
+     * each starting at the first record the previous one did not hold whole
+     */
+    private void replaySnapshot(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            for (long offset = 0; offset < size; ) {
+                ByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, offset,
+                        Math.min(size - offset, MAX_LOG_SIZE));
+                int valid = replay(window, store);
+                if (valid == 0)
+                    throw new IOException("corrupt snapshot " + file);
+                offset += valid;
+            }
+        }
+    }
+
+    /**
+     * Applies records to target, if not null, until the end of the buffer or
+     * the first invalid record; returns the length of the valid prefix
+     */
+    private static int replay(ByteBuffer buffer, ConcurrentAttributeStore target) {
+        CRC32 crc = new CRC32();
+        while (buffer.remaining() >= HEADER) {
+            int start = buffer.position();
+            int length = buffer.getInt();
+            int checksum = buffer.getInt();
+            if (length <= 0 || length > buffer.remaining())
+                return start;
+            ByteBuffer payload = buffer.slice();
+            payload.limit(length);
+            crc.reset();
+            crc.update(payload.duplicate());
+            if ((int) crc.getValue() != checksum)
+                return start;
+            if (target != null) {
+                byte op = payload.get();
+                String key = readString(payload);
+                if (op == PUT)
+                    target.put(key, readString(payload));
+                else
+                    target.remove(key);
+            }
+            buffer.position(start + HEADER + length);
+        }
+        return buffer.position();
+    }
+
+    @GuardedBy("this")
+    private void openLog(long g) throws IOException {
+        if (log != null) {
+            log.force();
+            logChannel.close();
+        }
+        Path file = directory.resolve(LOG + g);
+        logChannel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        syncDirectory();
+        long size = Math.max(logChannel.size(), INITIAL_LOG_SIZE);
+        log = logChannel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        int end = replay(log.duplicate(), null);
+        // Zero what is left of a torn record so it cannot be read back later
+        int dirty = log.capacity();
+        while (dirty > end && log.get(dirty - 1) == 0)
+            dirty--;
+        for (int i = end; i < dirty; i++)
+            log.put(i, (byte) 0);
+        log.position(end);
+        generation = g;
+    }
+
+    @GuardedBy("this")
+    private void append(byte op, String key, String value) throws IOException {
+        ByteBuffer payload = encode(op, key, value);
+        int needed = HEADER + payload.remaining();
+        if (needed > MAX_LOG_SIZE)
+            throw new IOException("record of " + needed + " bytes is larger than a log");
+        if (log.remaining() < needed) {
+            int position = log.position();
+            if ((long) position + needed > MAX_LOG_SIZE) {
+                openLog(generation + 1);
+                position = log.position();
+            }
+            if (log.remaining() < needed) {
+                long size = Math.min(Math.max(2L * log.capacity(), (long) position + needed), MAX_LOG_SIZE);
+                log = logChannel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+                log.position(position);
+            }
+        }
+        CRC32 crc = new CRC32();
+        crc.update(payload.duplicate());
+        int start = log.position();
+        // The length goes in last, so a crash mid-record leaves a zero length
+        log.position(start + 4);
+        log.putInt((int) crc.getValue());
+        log.put(payload);
+        log.putInt(start, needed - HEADER);
+    }
+
+    private void writeSnapshot(long g, Map<String, String> state) throws IOException {
+        Path tmp = directory.resolve(SNAPSHOT + g + TMP);
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.WRITE)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER);
+            CRC32 crc = new CRC32();
+            for (Map.Entry<String, String> e : state.entrySet()) {
+                ByteBuffer payload = encode(PUT, e.getKey(), e.getValue());
+                crc.reset();
+                crc.update(payload.duplicate());
+                header.clear();
+                header.putInt(payload.remaining()).putInt((int) crc.getValue()).flip();
+                while (header.hasRemaining())
+                    channel.write(header);
+                while (payload.hasRemaining())
+                    channel.write(payload);
+            }
+            channel.force(true);
+        }
+        Files.move(tmp, directory.resolve(SNAPSHOT + g), StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /** Makes creates, renames and deletes in the directory durable */
+    private void syncDirectory() throws IOException {
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        }
+    }
+
+    private static ByteBuffer encode(byte op, String key, String value) {
+        byte[] k = key.getBytes(StandardCharsets.UTF_8);
+        byte[] v = value == null ? null : value.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer payload = ByteBuffer.allocate(1 + 4 + k.length + (v == null ? 0 : 4 + v.length));
+        payload.put(op).putInt(k.length).put(k);
+        if (v != null)
+            payload.putInt(v.length).put(v);
+        payload.flip();
+        return payload;
+    }
+
+    private static String readString(ByteBuffer payload) {
+        byte[] bytes = new byte[payload.getInt()];
+        payload.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private ByteBuffer map(Path file, FileChannel.MapMode mode) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return channel.map(mode, 0, channel.size());
+        }
+    }
+
+    private List<Path> files() throws IOException {
+        List<Path> files = new ArrayList<Path>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+            for (Path file : stream) {
+                String name = file.getFileName().toString();
+                if (name.endsWith(TMP))
+                    name = name.substring(0, name.length() - TMP.length());
+                if (FILE_NAME.matcher(name).matches())
+                    files.add(file);
+            }
+        }
+        return files;
+    }
+
+    private static long generationOf(Path file) {
+        String name = file.getFileName().toString();
+        if (name.endsWith(TMP))
+            name = name.substring(0, name.length() - TMP.length());
+        return Long.parseLong(name.substring(name.indexOf('-') + 1));
+    }
+}
@@ -0,0 +1,111 @@
+package net.jcip.examples;
+
+import java.util.concurrent.*;
+
+import net.jcip.examples.random.*;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * PseudoRandomBenchmark
+ * <p/>
+ * One generator shared by all threads, guarded by CAS or by a lock, against
+ * per-thread generators that need no coordination at all, and single values
+ * against bulk fills and streams of the per-thread generators
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PseudoRandomBenchmark {
+    private static final int BOUND = 1000;
+    private static final int BULK = 1024;
+
+    private final AtomicPseudoRandom atomic = new AtomicPseudoRandom((int) System.nanoTime());
+    private final ReentrantLockPseudoRandom reentrantLock = new ReentrantLockPseudoRandom((int) System.nanoTime());
+
+    @State(Scope.Thread)
+    public static class ThreadState {
+        final XorShift xorShift = new XorShift();
+        final XorShift32 xorShift32 = new XorShift32(System.nanoTime());
+        final Xoroshiro128PlusPlus xoroshiro = new Xoroshiro128PlusPlus(System.nanoTime());
+        final SplitMix64 splitMix = new SplitMix64(System.nanoTime());
+        final int[] values = new int[BULK];
+    }
+
+    @Benchmark
+    public int atomicPseudoRandom() {
+        return atomic.nextInt(BOUND);
+    }
+
+    @Benchmark
+    public int reentrantLockPseudoRandom() {
+        return reentrantLock.nextInt(BOUND);
+    }
+
+    @Benchmark
+    public int threadLocalXorShift(ThreadState t) {
+        return (t.xorShift.next() >>> 1) % BOUND;
+    }
+
+    @Benchmark
+    public int threadLocalRandom() {
+        return ThreadLocalRandom.current().nextInt(BOUND);
+    }
+
+    @Benchmark
+    public int threadLocalGenerator() {
+        return ThreadLocalGenerator.current().nextInt(BOUND);
+    }
+
+    @Benchmark
+    public int xorShift32(ThreadState t) {
+        return t.xorShift32.nextInt(BOUND);
+    }
+
+    @Benchmark
+    public int xoroshiro128PlusPlus(ThreadState t) {
+        return t.xoroshiro.nextInt(BOUND);
+    }
+
+    @Benchmark
+    public int splitMix64(ThreadState t) {
+        return t.splitMix.nextInt(BOUND);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BULK)
+    public int[] xoroshiroNextIntLoop(ThreadState t) {
+        int[] values = t.values;
+        for (int i = 0; i < values.length; i++)
+            values[i] = t.xoroshiro.nextInt();
+        return values;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BULK)
+    public int[] xoroshiroFill(ThreadState t) {
+        t.xoroshiro.fill(t.values);
+        return t.values;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BULK)
+    public int[] splitMixFill(ThreadState t) {
+        t.splitMix.fill(t.values);
+        return t.values;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BULK)
+    public int xoroshiroStreamSum(ThreadState t) {
+        return t.xoroshiro.ints(BULK, BOUND).sum();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BULK)
+    public int threadLocalRandomStreamSum() {
+        return ThreadLocalRandom.current().ints(BULK, 0, BOUND).sum();
+    }
+}
@@ -0,0 +1,95 @@
+package net.jcip.examples;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * ReadWriteMapBenchmark
+ * <p/>
+ * ReadWriteMap against both modes of StampedReadWriteMap and
+ * ConcurrentHashMap, from pure reads to half writes. Each operation is a put
+ * with probability writePercent / 100 and a get otherwise, on a random key.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ReadWriteMapBenchmark {
+    @Param({"ReadWriteMap", "Optimistic", "CopyOnWrite", "ConcurrentHashMap"})
+    public String map;
+
+    @Param({"0", "10", "25", "50"})
+    public int writePercent;
+
+    @Param({"1024"})
+    public int keys;
+
+    private Access target;
+    private Integer[] keyObjects;
+
+    interface Access {
+        Object get(Object key);
+
+        Object put(Integer key, Integer value);
+    }
+
+    @Setup
+    public void setUp() {
+        Map<Integer, Integer> initial = new HashMap<Integer, Integer>();
+        keyObjects = new Integer[keys];
+        for (int i = 0; i < keys; i++) {
+            keyObjects[i] = i;
+            initial.put(keyObjects[i], keyObjects[i]);
+        }
+        switch (map) {
+            case "ReadWriteMap": {
+                final ReadWriteMap<Integer, Integer> m = new ReadWriteMap<Integer, Integer>(initial);
+                target = new Access() {
+                    public Object get(Object key) { return m.get(key); }
+                    public Object put(Integer key, Integer value) { return m.put(key, value); }
+                };
+                break;
+            }
+            case "Optimistic":
+            case "CopyOnWrite": {
+                final StampedReadWriteMap<Integer, Integer> m = new StampedReadWriteMap<Integer, Integer>(initial,
+                        map.equals("Optimistic")
+                                ? StampedReadWriteMap.Mode.OPTIMISTIC
+                                : StampedReadWriteMap.Mode.COPY_ON_WRITE);
+                target = new Access() {
+                    public Object get(Object key) { return m.get(key); }
+                    public Object put(Integer key, Integer value) { return m.put(key, value); }
+                };
+                break;
+            }
+            case "ConcurrentHashMap": {
+                final ConcurrentHashMap<Integer, Integer> m = new ConcurrentHashMap<Integer, Integer>(initial);
+                target = new Access() {
+                    public Object get(Object key) { return m.get(key); }
+                    public Object put(Integer key, Integer value) { return m.put(key, value); }
+                };
+                break;
+            }
+            default:
+                throw new IllegalArgumentException(map);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class ThreadState {
+        final XorShift rnd = new XorShift();
+    }
+
+    @Benchmark
+    public Object readWrite(ThreadState t) {
+        int r = t.rnd.next() >>> 1;
+        Integer key = keyObjects[r % keys];
+        if ((r >>> 16) % 100 < writePercent)
+            return target.put(key, key);
+        return target.get(key);
+    }
+}
@@ -40,7 +40,7 @@ public class ServerStatusAfterSplit {
     }
 
     public void removeQuery(String q) {
-        synchronized (users) {
+        synchronized (queries) {
             queries.remove(q);
         }
     }
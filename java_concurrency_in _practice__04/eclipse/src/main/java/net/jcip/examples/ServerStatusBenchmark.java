@@ -0,0 +1,155 @@
+package net.jcip.examples;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * ServerStatusBenchmark
+ * <p/>
+ * One lock, split locks and no locks, for logins and queries coming and
+ * going at full speed, and for a mix in which an admin thread also takes
+ * snapshots
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ServerStatusBenchmark {
+    @Param({"ServerStatusBeforeSplit", "ServerStatusAfterSplit", "ConcurrentServerStatus"})
+    public String status;
+
+    @Param({"1024"})
+    public int keys;
+
+    private Status target;
+    private String[] users;
+    private String[] queries;
+
+    // The three versions share no interface
+    private interface Status {
+        void addUser(String u);
+
+        void addQuery(String q);
+
+        void removeUser(String u);
+
+        void removeQuery(String q);
+
+        int snapshotSize();
+    }
+
+    @Setup
+    public void setUp() {
+        switch (status) {
+            case "ServerStatusBeforeSplit":
+                final ServerStatusBeforeSplit before = new ServerStatusBeforeSplit();
+                target = new Status() {
+                    public void addUser(String u) { before.addUser(u); }
+                    public void addQuery(String q) { before.addQuery(q); }
+                    public void removeUser(String u) { before.removeUser(u); }
+                    public void removeQuery(String q) { before.removeQuery(q); }
+
+                    public int snapshotSize() {
+                        synchronized (before) {
+                            return new HashSet<String>(before.users).size()
+                                    + new HashSet<String>(before.queries).size();
+                        }
+                    }
+                };
+                break;
+            case "ServerStatusAfterSplit":
+                final ServerStatusAfterSplit after = new ServerStatusAfterSplit();
+                target = new Status() {
+                    public void addUser(String u) { after.addUser(u); }
+                    public void addQuery(String q) { after.addQuery(q); }
+                    public void removeUser(String u) { after.removeUser(u); }
+                    public void removeQuery(String q) { after.removeQuery(q); }
+
+                    public int snapshotSize() {
+                        int size;
+                        synchronized (after.users) {
+                            size = new HashSet<String>(after.users).size();
+                        }
+                        synchronized (after.queries) {
+                            return size + new HashSet<String>(after.queries).size();
+                        }
+                    }
+                };
+                break;
+            case "ConcurrentServerStatus":
+                final ConcurrentServerStatus concurrent = new ConcurrentServerStatus();
+                target = new Status() {
+                    public void addUser(String u) { concurrent.addUser(u); }
+                    public void addQuery(String q) { concurrent.addQuery(q); }
+                    public void removeUser(String u) { concurrent.removeUser(u); }
+                    public void removeQuery(String q) { concurrent.removeQuery(q); }
+
+                    public int snapshotSize() {
+                        ConcurrentServerStatus.Snapshot s = concurrent.takeSnapshot();
+                        return s.getUserCount() + s.getQueryCount();
+                    }
+                };
+                break;
+            default:
+                throw new IllegalArgumentException(status);
+        }
+        users = new String[keys];
+        queries = new String[keys];
+        for (int i = 0; i < keys; i++) {
+            users[i] = "user" + i;
+            queries[i] = "select " + i;
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class ThreadState {
+        final XorShift rnd = new XorShift();
+
+        int next(int n) {
+            return (rnd.next() >>> 1) % n;
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(2)
+    public void loginLogout(ThreadState t) {
+        String u = users[t.next(keys)];
+        target.addUser(u);
+        target.removeUser(u);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(2)
+    public void queryStartFinish(ThreadState t) {
+        String q = queries[t.next(keys)];
+        target.addQuery(q);
+        target.removeQuery(q);
+    }
+
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(2)
+    @OperationsPerInvocation(2)
+    public void mixedUsers(ThreadState t) {
+        loginLogout(t);
+    }
+
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(2)
+    @OperationsPerInvocation(2)
+    public void mixedQueries(ThreadState t) {
+        queryStartFinish(t);
+    }
+
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(1)
+    public int mixedSnapshot() {
+        return target.snapshotSize();
+    }
+}
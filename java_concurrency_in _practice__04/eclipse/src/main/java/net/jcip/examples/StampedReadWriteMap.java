@@ -0,0 +1,292 @@
+package net.jcip.examples;
+
+import java.util.*;
+import java.util.concurrent.locks.*;
+
+import net.jcip.annotations.*;
+
+/**
+ * StampedReadWriteMap
+ * <p/>
+ * ReadWriteMap without a shared reader count. Every ReentrantReadWriteLock
+ * read updates the lock state with a CAS, so readers on different cores
+ * contend on one cache line even when nobody writes. Two modes avoid that:
+ * <p/>
+ * OPTIMISTIC reads under a StampedLock optimistic stamp and validates it
+ * afterwards; only a read that overlapped a write is repeated under the read
+ * lock. A read that may overlap a write has to be written for it, so this
+ * mode keeps its own chained hash table instead of a Map. Its nodes are
+ * immutable: a write copies the part of a chain in front of the node it
+ * changes, and a resize builds a new table. A racy read therefore walks a
+ * finite chain that some write left behind, and at worst answers wrongly,
+ * which validate catches. Chains are never turned into trees, so keys with
+ * badly distributed hash codes should use COPY_ON_WRITE or ReadWriteMap.
+ * <p/>
+ * COPY_ON_WRITE publishes an immutable snapshot through a volatile field, so
+ * a read is one volatile load, and every write copies the whole map into a
+ * new HashMap. Only worth it when writes are rare.
+ */
+@ThreadSafe
+public class StampedReadWriteMap <K,V> {
+    public enum Mode { OPTIMISTIC, COPY_ON_WRITE }
+
+    private static final int MIN_CAPACITY = 16;
+
+    private static class Node <K,V> {
+        final int hash;
+        final K key;
+        final V value;
+        final Node<K, V> next;
+
+        Node(int hash, K key, V value, Node<K, V> next) {
+            this.hash = hash;
+            this.key = key;
+            this.value = value;
+            this.next = next;
+        }
+    }
+
+    private final Mode mode;
+    private final StampedLock lock = new StampedLock();
+    // OPTIMISTIC: written under the write lock, read optimistically
+    private Node<K, V>[] table;
+    private int size;
+    // COPY_ON_WRITE: never modified once published; replaced under the write lock
+    private volatile Map<K, V> snapshot;
+
+    public StampedReadWriteMap(Map<K, V> map) {
+        this(map, Mode.OPTIMISTIC);
+    }
+
+    public StampedReadWriteMap(Map<K, V> map, Mode mode) {
+        this.mode = mode;
+        if (mode == Mode.COPY_ON_WRITE) {
+            this.snapshot = new HashMap<K, V>(map);
+        } else {
+            int capacity = MIN_CAPACITY;
+            while (capacity / 4 * 3 < map.size())
+                capacity <<= 1;
+            this.table = newTable(capacity);
+            for (Map.Entry<K, V> e : map.entrySet())
+                insert(e.getKey(), e.getValue());
+        }
+    }
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    public V put(K key, V value) {
+        long stamp = lock.writeLock();
+        try {
+            if (mode == Mode.OPTIMISTIC)
+                return insert(key, value);
+            Map<K, V> copy = new HashMap<K, V>(snapshot);
+            V old = copy.put(key, value);
+            snapshot = copy;
+            return old;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    public V remove(Object key) {
+        long stamp = lock.writeLock();
+        try {
+            if (mode == Mode.OPTIMISTIC)
+                return delete(key);
+            if (!snapshot.containsKey(key))
+                return null;
+            Map<K, V> copy = new HashMap<K, V>(snapshot);
+            V old = copy.remove(key);
+            snapshot = copy;
+            return old;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    public void putAll(Map<? extends K, ? extends V> m) {
+        long stamp = lock.writeLock();
+        try {
+            if (mode == Mode.OPTIMISTIC) {
+                for (Map.Entry<? extends K, ? extends V> e : m.entrySet())
+                    insert(e.getKey(), e.getValue());
+            } else {
+                Map<K, V> copy = new HashMap<K, V>(snapshot);
+                copy.putAll(m);
+                snapshot = copy;
+            }
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    public void clear() {
+        long stamp = lock.writeLock();
+        try {
+            if (mode == Mode.OPTIMISTIC) {
+                table = newTable(MIN_CAPACITY);
+                size = 0;
+            } else {
+                snapshot = new HashMap<K, V>();
+            }
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    public V get(Object key) {
+        if (mode == Mode.COPY_ON_WRITE)
+            return snapshot.get(key);
+        long stamp = lock.tryOptimisticRead();
+        if (stamp != 0) {
+            Node<K, V> node = find(key);
+            V value = node == null ? null : node.value;
+            if (lock.validate(stamp))
+                return value;
+        }
+        stamp = lock.readLock();
+        try {
+            Node<K, V> node = find(key);
+            return node == null ? null : node.value;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    public int size() {
+        if (mode == Mode.COPY_ON_WRITE)
+            return snapshot.size();
+        long stamp = lock.tryOptimisticRead();
+        int n = size;
+        if (stamp != 0 && lock.validate(stamp))
+            return n;
+        stamp = lock.readLock();
+        try {
+            return size;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    public boolean containsKey(Object key) {
+        if (mode == Mode.COPY_ON_WRITE)
+            return snapshot.containsKey(key);
+        long stamp = lock.tryOptimisticRead();
+        if (stamp != 0) {
+            boolean found = find(key) != null;
+            if (lock.validate(stamp))
+                return found;
+        }
+        stamp = lock.readLock();
+        try {
+            return find(key) != null;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /** Scans every value, so it always takes the read lock in OPTIMISTIC mode */
+    public boolean containsValue(Object value) {
+        if (mode == Mode.COPY_ON_WRITE)
+            return snapshot.containsValue(value);
+        long stamp = lock.readLock();
+        try {
+            for (Node<K, V> head : table)
+                for (Node<K, V> n = head; n != null; n = n.next)
+                    if (Objects.equals(value, n.value))
+                        return true;
+            return false;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Safe without the lock: the table and every node are read once into
+     * locals, a node's fields are final, and a chain only ever points at
+     * nodes that existed before it, so it ends. A racy read can miss a key
+     * or return a stale node, but cannot loop or throw.
+     */
+    private Node<K, V> find(Object key) {
+        int h = hash(key);
+        Node<K, V>[] tab = table;
+        for (Node<K, V> n = tab[h & (tab.length - 1)]; n != null; n = n.next)
+            if (n.hash == h && Objects.equals(key, n.key))
+                return n;
+        return null;
+    }
+
+    // The write lock must be held for insert and delete
+
+    private V insert(K key, V value) {
+        int h = hash(key);
+        Node<K, V>[] tab = table;
+        int i = h & (tab.length - 1);
+        Node<K, V> old = null;
+        for (Node<K, V> n = tab[i]; n != null; n = n.next)
+            if (n.hash == h && Objects.equals(key, n.key)) {
+                old = n;
+                break;
+            }
+        if (old != null) {
+            tab[i] = replace(tab[i], old, new Node<K, V>(h, key, value, old.next));
+            return old.value;
+        }
+        tab[i] = new Node<K, V>(h, key, value, tab[i]);
+        if (++size > tab.length / 4 * 3)
+            resize();
+        return null;
+    }
+
+    private V delete(Object key) {
+        int h = hash(key);
+        Node<K, V>[] tab = table;
+        int i = h & (tab.length - 1);
+        for (Node<K, V> n = tab[i]; n != null; n = n.next)
+            if (n.hash == h && Objects.equals(key, n.key)) {
+                tab[i] = replace(tab[i], n, n.next);
+                size--;
+                return n.value;
+            }
+        return null;
+    }
+
+    /** Copies the nodes of the chain in front of target onto rest */
+    private static <K,V> Node<K, V> replace(Node<K, V> head, Node<K, V> target, Node<K, V> rest) {
+        List<Node<K, V>> prefix = new ArrayList<Node<K, V>>();
+        for (Node<K, V> n = head; n != target; n = n.next)
+            prefix.add(n);
+        for (int i = prefix.size() - 1; i >= 0; i--) {
+            Node<K, V> n = prefix.get(i);
+            rest = new Node<K, V>(n.hash, n.key, n.value, rest);
+        }
+        return rest;
+    }
+
+    /** Builds the new table completely before publishing it */
+    private void resize() {
+        Node<K, V>[] tab = newTable(table.length * 2);
+        for (Node<K, V> head : table)
+            for (Node<K, V> n = head; n != null; n = n.next) {
+                int i = n.hash & (tab.length - 1);
+                tab[i] = new Node<K, V>(n.hash, n.key, n.value, tab[i]);
+            }
+        table = tab;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <K,V> Node<K, V>[] newTable(int capacity) {
+        return (Node<K, V>[]) new Node[capacity];
+    }
+
+    private static int hash(Object key) {
+        int h = key == null ? 0 : key.hashCode();
+        return h ^ (h >>> 16);
+    }
+}
@@ -43,6 +43,24 @@ public class StripedMap {
         return null;
     }
 
+    public Object put(Object key, Object value) {
+        int hash = hash(key);
+        synchronized (locks[hash % N_LOCKS]) {
+            for (Node m = buckets[hash]; m != null; m = m.next)
+                if (m.key.equals(key)) {
+                    Object old = m.value;
+                    m.value = value;
+                    return old;
+                }
+            Node n = new Node();
+            n.key = key;
+            n.value = value;
+            n.next = buckets[hash];
+            buckets[hash] = n;
+        }
+        return null;
+    }
+
     public void clear() {
         for (int i = 0; i < buckets.length; i++) {
             synchronized (locks[i % N_LOCKS]) {
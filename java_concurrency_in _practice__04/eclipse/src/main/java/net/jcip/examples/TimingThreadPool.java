@@ -1,9 +1,10 @@
 package net.jcip.examples;
 
 import java.util.concurrent.*;
-import java.util.concurrent.atomic.*;
 import java.util.logging.*;
 
+import net.jcip.examples.metrics.*;
+
 /**
  * TimingThreadPool
  * <p/>
@@ -14,13 +15,28 @@ import java.util.logging.*;
 public class TimingThreadPool extends ThreadPoolExecutor {
 
     public TimingThreadPool() {
-        super(1, 1, 0L, TimeUnit.SECONDS, null);
+        super(1, 1, 0L, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>());
     }
 
     private final ThreadLocal<Long> startTime = new ThreadLocal<Long>();
     private final Logger log = Logger.getLogger("TimingThreadPool");
-    private final AtomicLong numTasks = new AtomicLong();
-    private final AtomicLong totalTime = new AtomicLong();
+    private final StripedCounter numTasks = new StripedCounter();
+    private final StripedCounter totalTime = new StripedCounter();
+    private final LogHistogram taskTimes = new LogHistogram();
+    private final Gauge queuedTasks = new Gauge() {
+        public long getValue() {
+            return getQueue().size();
+        }
+    };
+
+    /** Task execution times in nanoseconds */
+    public LogHistogram getTaskTimes() {
+        return taskTimes;
+    }
+
+    public Gauge getQueuedTasks() {
+        return queuedTasks;
+    }
 
     protected void beforeExecute(Thread t, Runnable r) {
         super.beforeExecute(t, r);
@@ -32,8 +48,9 @@ public class TimingThreadPool extends ThreadPoolExecutor {
         try {
             long endTime = System.nanoTime();
             long taskTime = endTime - startTime.get();
-            numTasks.incrementAndGet();
-            totalTime.addAndGet(taskTime);
+            numTasks.increment();
+            totalTime.add(taskTime);
+            taskTimes.record(taskTime);
             log.fine(String.format("Thread %s: end %s, time=%dns",
                     t, r, taskTime));
         } finally {
@@ -43,8 +60,9 @@ public class TimingThreadPool extends ThreadPoolExecutor {
 
     protected void terminated() {
         try {
-            log.info(String.format("Terminated: avg time=%dns",
-                    totalTime.get() / numTasks.get()));
+            long tasks = numTasks.sum();
+            log.info(String.format("Terminated: avg time=%dns, p99=%dns",
+                    tasks == 0 ? 0 : totalTime.sum() / tasks, taskTimes.getQuantile(0.99)));
         } finally {
             super.terminated();
         }
@@ -4,6 +4,7 @@ import java.math.BigInteger;
 import javax.servlet.*;
 
 import net.jcip.annotations.*;
+import net.jcip.examples.metrics.StripedCounter;
 
 /**
  * CachedFactorizer
@@ -16,27 +17,28 @@ import net.jcip.annotations.*;
 public class CachedFactorizer extends GenericServlet implements Servlet {
     @GuardedBy("this") private BigInteger lastNumber;
     @GuardedBy("this") private BigInteger[] lastFactors;
-    @GuardedBy("this") private long hits;
-    @GuardedBy("this") private long cacheHits;
+    // Statistics only, so they need not be consistent with the cache or each other
+    private final StripedCounter hits = new StripedCounter();
+    private final StripedCounter cacheHits = new StripedCounter();
 
-    public synchronized long getHits() {
-        return hits;
+    public long getHits() {
+        return hits.sum();
     }
 
-    public synchronized double getCacheHitRatio() {
-        return (double) cacheHits / (double) hits;
+    public double getCacheHitRatio() {
+        return (double) cacheHits.sum() / (double) hits.sum();
     }
 
     public void service(ServletRequest req, ServletResponse resp) {
         BigInteger i = extractFromRequest(req);
         BigInteger[] factors = null;
+        hits.increment();
         synchronized (this) {
-            ++hits;
-            if (i.equals(lastNumber)) {
-                ++cacheHits;
+            if (i.equals(lastNumber))
                 factors = lastFactors.clone();
-            }
         }
+        if (factors != null)
+            cacheHits.increment();
         if (factors == null) {
             factors = factor(i);
             synchronized (this) {
@@ -2,6 +2,8 @@ package net.jcip.examples.ch4;
 
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import java.util.function.*;
 import java.awt.*;
 import java.awt.Point;
 
@@ -18,10 +20,17 @@ import net.jcip.annotations.*;
 public class DelegatingVehicleTracker {
     private final ConcurrentMap<String, Point> locations;
     private final Map<String, Point> unmodifiableMap;
+    private final LocationChangeFeed changeFeed;
+    private final AtomicLong sequence = new AtomicLong();
 
     public DelegatingVehicleTracker(Map<String, Point> points) {
+        this(points, ForkJoinPool.commonPool());
+    }
+
+    public DelegatingVehicleTracker(Map<String, Point> points, Executor feedExecutor) {
         locations = new ConcurrentHashMap<String, Point>(points);
         unmodifiableMap = Collections.unmodifiableMap(locations);
+        changeFeed = new LocationChangeFeed(feedExecutor, Math.max(1, locations.size()));
     }
 
     public Map<String, Point> getLocations() {
@@ -32,9 +41,30 @@ public class DelegatingVehicleTracker {
         return locations.get(id);
     }
 
-    public void setLocation(String id, int x, int y) {
-        if (locations.replace(id, new Point(x, y)) == null)
+    public void setLocation(final String id, final int x, final int y) {
+        // The sequence number is taken under the bin lock, so it follows the
+        // order in which the map saw the moves; the feed is an alien call and
+        // runs after computeIfPresent returns, and drops any update that
+        // arrives after a newer one for the same vehicle
+        final LocationUpdate[] update = new LocationUpdate[1];
+        Point moved = locations.computeIfPresent(id, new BiFunction<String, Point, Point>() {
+            public Point apply(String key, Point old) {
+                update[0] = new LocationUpdate(key, x, y, sequence.incrementAndGet());
+                return new Point(x, y);
+            }
+        });
+        if (moved == null)
             throw new IllegalArgumentException("invalid vehicle name: " + id);
+        changeFeed.publish(update[0]);
+    }
+
+    /**
+     * Deltas of every successful setLocation, conflated per vehicle for
+     * subscribers that fall behind; the buffer is sized to the fleet, so
+     * conflation alone keeps it bounded and no vehicle's latest move is lost.
+     */
+    public Flow.Publisher<LocationUpdate> getLocationUpdates() {
+        return changeFeed;
     }
 
     // Alternate version of getLocations (Listing 4.8)
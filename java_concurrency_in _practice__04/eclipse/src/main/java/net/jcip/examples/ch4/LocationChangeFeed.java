@@ -0,0 +1,194 @@
+package net.jcip.examples.ch4;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+import net.jcip.annotations.*;
+
+/**
+ * LocationChangeFeed
+ * <p/>
+ * Publishing vehicle location deltas with per-subscriber bounded, conflating buffers
+ * <p/>
+ * Every subscriber owns a buffer keyed by vehicle id, so a vehicle that moves
+ * several times before the subscriber asks for more is delivered once, with
+ * its latest position, in the slot of its first pending move. A buffer holds
+ * at most capacity distinct vehicles; beyond that the oldest pending update
+ * is dropped. An update whose sequence is not newer than the last one
+ * offered for its vehicle is stale and dropped too, so publishers need not
+ * serialize their calls. Signals run on the supplied executor, serialized
+ * per subscriber, so publish never calls into subscriber code.
+ */
+@ThreadSafe
+public class LocationChangeFeed implements Flow.Publisher<LocationUpdate> {
+    private final Executor executor;
+    private final int capacity;
+    private final List<FeedSubscription> subscriptions
+            = new CopyOnWriteArrayList<FeedSubscription>();
+    private volatile boolean closed;
+
+    public LocationChangeFeed(Executor executor, int capacity) {
+        if (executor == null)
+            throw new NullPointerException();
+        if (capacity <= 0)
+            throw new IllegalArgumentException("capacity must be positive: " + capacity);
+        this.executor = executor;
+        this.capacity = capacity;
+    }
+
+    public void subscribe(Flow.Subscriber<? super LocationUpdate> subscriber) {
+        if (subscriber == null)
+            throw new NullPointerException();
+        FeedSubscription subscription = new FeedSubscription(subscriber);
+        subscriptions.add(subscription);
+        if (closed)
+            subscription.complete();
+        subscription.signal();
+    }
+
+    public void publish(LocationUpdate update) {
+        for (FeedSubscription subscription : subscriptions)
+            subscription.offer(update);
+    }
+
+    /**
+     * Completes every subscriber once it has drained its buffer; later
+     * subscribers are completed immediately.
+     */
+    public void close() {
+        closed = true;
+        for (FeedSubscription subscription : subscriptions)
+            subscription.complete();
+    }
+
+    public int getSubscriberCount() {
+        return subscriptions.size();
+    }
+
+    private class FeedSubscription implements Flow.Subscription, Runnable {
+        private final Flow.Subscriber<? super LocationUpdate> subscriber;
+        private final AtomicInteger wip = new AtomicInteger();
+        @GuardedBy("this") private final Map<String, LocationUpdate> pending
+                = new LinkedHashMap<String, LocationUpdate>();
+        @GuardedBy("this") private final Map<String, Long> newest = new HashMap<String, Long>();
+        @GuardedBy("this") private long demand;
+        @GuardedBy("this") private boolean completed, cancelled;
+        @GuardedBy("this") private Throwable error;
+        // Only touched by the task that won the wip counter
+        private boolean subscribed;
+
+        FeedSubscription(Flow.Subscriber<? super LocationUpdate> subscriber) {
+            this.subscriber = subscriber;
+        }
+
+        void offer(LocationUpdate update) {
+            synchronized (this) {
+                if (completed || cancelled)
+                    return;
+                Long last = newest.get(update.id);
+                if (last != null && last >= update.sequence)
+                    return;
+                newest.put(update.id, update.sequence);
+                if (!pending.containsKey(update.id) && pending.size() >= capacity) {
+                    Iterator<String> eldest = pending.keySet().iterator();
+                    eldest.next();
+                    eldest.remove();
+                }
+                pending.put(update.id, update);
+                if (demand == 0)
+                    return;
+            }
+            signal();
+        }
+
+        void complete() {
+            synchronized (this) {
+                completed = true;
+            }
+            signal();
+        }
+
+        public void request(long n) {
+            synchronized (this) {
+                if (n <= 0) {
+                    if (error == null)
+                        error = new IllegalArgumentException("non-positive request: " + n);
+                } else {
+                    demand += n;
+                    if (demand < 0)
+                        demand = Long.MAX_VALUE;
+                }
+            }
+            signal();
+        }
+
+        public void cancel() {
+            synchronized (this) {
+                cancelled = true;
+                pending.clear();
+            }
+            subscriptions.remove(this);
+        }
+
+        void signal() {
+            if (wip.getAndIncrement() == 0)
+                executor.execute(this);
+        }
+
+        public void run() {
+            int missed = 1;
+            do {
+                if (!subscribed) {
+                    subscribed = true;
+                    try {
+                        subscriber.onSubscribe(this);
+                    } catch (RuntimeException ex) {
+                        cancel();
+                    }
+                }
+                drain();
+                missed = wip.addAndGet(-missed);
+            } while (missed != 0);
+        }
+
+        private void drain() {
+            for (;;) {
+                LocationUpdate next = null;
+                Throwable failure;
+                boolean done;
+                synchronized (this) {
+                    if (cancelled)
+                        return;
+                    failure = error;
+                    done = completed && pending.isEmpty();
+                    if (failure == null && demand > 0 && !pending.isEmpty()) {
+                        Iterator<LocationUpdate> oldest = pending.values().iterator();
+                        next = oldest.next();
+                        oldest.remove();
+                        demand--;
+                    }
+                }
+                if (failure != null) {
+                    cancel();
+                    subscriber.onError(failure);
+                    return;
+                }
+                if (done) {
+                    cancel();
+                    subscriber.onComplete();
+                    return;
+                }
+                if (next == null)
+                    return;
+                try {
+                    subscriber.onNext(next);
+                } catch (RuntimeException ex) {
+                    cancel();
+                    subscriber.onError(ex);
+                    return;
+                }
+            }
+        }
+    }
+}
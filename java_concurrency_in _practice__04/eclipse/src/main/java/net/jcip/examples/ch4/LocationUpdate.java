@@ -0,0 +1,28 @@
+package net.jcip.examples.ch4;
+
+import net.jcip.annotations.*;
+
+/**
+ * LocationUpdate
+ * <p/>
+ * Immutable vehicle position change published by DelegatingVehicleTracker.
+ * Sequence numbers increase with each move of the same vehicle, so a feed
+ * can tell a stale update that arrives late from a newer one.
+ */
+@Immutable
+public class LocationUpdate {
+    public final String id;
+    public final int x, y;
+    public final long sequence;
+
+    public LocationUpdate(String id, int x, int y, long sequence) {
+        this.id = id;
+        this.x = x;
+        this.y = y;
+        this.sequence = sequence;
+    }
+
+    public String toString() {
+        return id + "@(" + x + ", " + y + ")";
+    }
+}
@@ -0,0 +1,68 @@
+package net.jcip.examples.ch5;
+
+import java.util.*;
+
+/**
+ * CellularAutomataBenchmark
+ * <p/>
+ * Timing ParallelCellularAutomata on random Life boards up to 16k x 16k
+ * <p/>
+ * Every size is timed dense (random cells everywhere) and sparse (random cells
+ * in one patch a quarter of the board's side), showing what active-tile
+ * tracking saves on mostly quiescent boards.
+ * <p/>
+ * Usage: CellularAutomataBenchmark [generations [size...]]. A 16384 board
+ * needs three 256MB arrays, so run it with -Xmx1g or more.
+ */
+public class CellularAutomataBenchmark {
+    private static final int[] DEFAULT_SIZES = {1024, 4096, 16384};
+
+    public static void main(String[] args) throws InterruptedException {
+        int generations = args.length > 0 ? Integer.parseInt(args[0]) : 20;
+        int[] sizes = DEFAULT_SIZES;
+        if (args.length > 1) {
+            sizes = new int[args.length - 1];
+            for (int i = 1; i < args.length; i++)
+                sizes[i - 1] = Integer.parseInt(args[i]);
+        }
+        // Warm up the tile loop before timing anything
+        time(512, generations, 1, false);
+        for (int size : sizes) {
+            for (boolean sparse : new boolean[]{false, true}) {
+                System.out.println(sparse ? "sparse" : "dense");
+                for (int workers = 1; workers <= Runtime.getRuntime().availableProcessors(); workers *= 2)
+                    report(size, workers, time(size, generations, workers, sparse));
+            }
+            System.out.println();
+        }
+    }
+
+    private static long[] time(int size, int generations, int workers, boolean sparse)
+            throws InterruptedException {
+        ParallelCellularAutomata automata = new ParallelCellularAutomata(size, size,
+                ParallelCellularAutomata.LIFE, ParallelCellularAutomata.DEFAULT_TILE_SIZE, workers);
+        automata.load(randomBoard(size, sparse ? size / 4 : size, 42));
+        long start = System.nanoTime();
+        int ran = automata.run(generations);
+        long nanos = System.nanoTime() - start;
+        return new long[]{nanos, ran, automata.getTilesStepped() * 100 / Math.max(1L, ran * automata.getTileCount())};
+    }
+
+    private static void report(int size, int workers, long[] result) {
+        long nanos = result[0], ran = result[1], activePercent = result[2];
+        double nsPerCell = (double) nanos / ((double) size * size * Math.max(ran, 1));
+        System.out.printf("%6dx%-6d workers: %3d  generations: %4d  %8.3f ms/gen  %6.3f ns/cell  %3d%% tiles active%n",
+                size, size, workers, ran, nanos / 1e6 / Math.max(ran, 1), nsPerCell, activePercent);
+    }
+
+    // Random cells in a centered patch x patch square, the rest dead
+    private static byte[] randomBoard(int size, int patch, long seed) {
+        SplittableRandom random = new SplittableRandom(seed);
+        byte[] cells = new byte[size * size];
+        int from = (size - patch) / 2;
+        for (int y = from; y < from + patch; y++)
+            for (int x = from; x < from + patch; x++)
+                cells[y * size + x] = (byte) (random.nextInt(4) == 0 ? 1 : 0);
+        return cells;
+    }
+}
@@ -0,0 +1,370 @@
+package net.jcip.examples.ch5;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+import net.jcip.annotations.*;
+
+/**
+ * ParallelCellularAutomata
+ * <p/>
+ * Double-buffered cellular automaton stepped tile by tile with Phaser generations
+ * <p/>
+ * The board lives in two row-major byte arrays; a generation reads one and
+ * writes the other, and the Phaser's onAdvance swaps them. The board is cut
+ * into square tiles small enough to stay in cache, and every worker starts on
+ * its own contiguous run of tiles, stealing unclaimed tiles from the other
+ * workers' runs once its own is exhausted, so busy regions get shared out
+ * without a central queue. Each worker counts the cells it changed and
+ * onAdvance sums the counts, stopping when a generation changes nothing.
+ * <p/>
+ * Only active tiles are stepped. A tile is active when a cell in it or in the
+ * border cells of a neighbouring tile changed last generation; workers mark
+ * these in the next bitmap and onAdvance swaps the bitmaps, so a mostly
+ * quiescent board costs work proportional to its activity. Skipping a tile is
+ * safe because a tile that did not change holds the same cells in both
+ * buffers, and because a Rule reads no further than a cell's neighbours.
+ */
+@ThreadSafe
+public class ParallelCellularAutomata {
+    public static final int DEFAULT_TILE_SIZE = 64;
+
+    public interface Rule {
+        /**
+         * New state of (x, y), read from the row-major width x height board in cells
+         * <p/>
+         * The result may depend only on (x, y) and its eight neighbours.
+         * Tiles whose cells and border neighbours did not change are not
+         * stepped, so a rule that reads further away would leave them stale.
+         */
+        int computeValue(byte[] cells, int width, int height, int x, int y);
+    }
+
+    /**
+     * Conway's Game of Life on a board whose outside is dead
+     */
+    public static final Rule LIFE = new Rule() {
+        public int computeValue(byte[] cells, int width, int height, int x, int y) {
+            int i = y * width + x;
+            if (x > 0 && x < width - 1 && y > 0 && y < height - 1) {
+                int above = i - width, below = i + width;
+                int live = cells[above - 1] + cells[above] + cells[above + 1]
+                        + cells[i - 1] + cells[i + 1]
+                        + cells[below - 1] + cells[below] + cells[below + 1];
+                return (live == 3 || (live == 2 && cells[i] == 1)) ? 1 : 0;
+            }
+            int x0 = Math.max(x - 1, 0), x1 = Math.min(x + 1, width - 1);
+            int y0 = Math.max(y - 1, 0), y1 = Math.min(y + 1, height - 1);
+            int live = 0;
+            for (int ny = y0; ny <= y1; ny++) {
+                int row = ny * width;
+                for (int nx = x0; nx <= x1; nx++)
+                    live += cells[row + nx];
+            }
+            int self = cells[i];
+            live -= self;
+            return (live == 3 || (live == 2 && self == 1)) ? 1 : 0;
+        }
+    };
+
+    private final int width, height, tileSize, tilesX, tileCount;
+    private final Rule rule;
+    private final int nWorkers;
+    // Each worker's run of tiles is [cursors[i], runEnds[i]); cursors are reset in onAdvance
+    private final AtomicInteger[] cursors;
+    private final int[] runStarts, runEnds;
+    // Slot i is written by worker i once per generation and summed in onAdvance
+    private final long[] changed, stepped;
+    // Bit t set means tile t is stepped this generation / next generation
+    private AtomicLongArray active, nextActive;
+    private long tilesStepped;
+    // Swapped only in onAdvance or while no generation is running
+    private byte[] current, next;
+    private int generations, limit;
+    private boolean converged;
+
+    public ParallelCellularAutomata(int width, int height, Rule rule) {
+        this(width, height, rule, DEFAULT_TILE_SIZE,
+                Runtime.getRuntime().availableProcessors());
+    }
+
+    public ParallelCellularAutomata(int width, int height, Rule rule,
+                                    int tileSize, int nWorkers) {
+        if (width <= 0 || height <= 0 || (long) width * height > Integer.MAX_VALUE - 8)
+            throw new IllegalArgumentException("bad board size: " + width + "x" + height);
+        if (tileSize <= 0 || nWorkers <= 0)
+            throw new IllegalArgumentException();
+        if (rule == null)
+            throw new NullPointerException();
+        this.width = width;
+        this.height = height;
+        this.rule = rule;
+        this.tileSize = tileSize;
+        this.tilesX = (width + tileSize - 1) / tileSize;
+        this.tileCount = tilesX * ((height + tileSize - 1) / tileSize);
+        this.nWorkers = Math.min(nWorkers, tileCount);
+        this.cursors = new AtomicInteger[this.nWorkers];
+        this.runStarts = new int[this.nWorkers];
+        this.runEnds = new int[this.nWorkers];
+        for (int i = 0; i < this.nWorkers; i++) {
+            runStarts[i] = (int) ((long) tileCount * i / this.nWorkers);
+            runEnds[i] = (int) ((long) tileCount * (i + 1) / this.nWorkers);
+            cursors[i] = new AtomicInteger(runStarts[i]);
+        }
+        this.changed = new long[this.nWorkers];
+        this.stepped = new long[this.nWorkers];
+        this.active = new AtomicLongArray((tileCount + 63) >>> 6);
+        this.nextActive = new AtomicLongArray(active.length());
+        markAll();
+        this.current = new byte[width * height];
+        this.next = new byte[width * height];
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public int getTileCount() {
+        return tileCount;
+    }
+
+    public synchronized int getValue(int x, int y) {
+        return current[index(x, y)];
+    }
+
+    public synchronized void setValue(int x, int y, int value) {
+        current[index(x, y)] = (byte) value;
+        int tx = x / tileSize, ty = y / tileSize;
+        for (int ny = Math.max(ty - 1, 0); ny <= Math.min(ty + 1, tileCount / tilesX - 1); ny++)
+            for (int nx = Math.max(tx - 1, 0); nx <= Math.min(tx + 1, tilesX - 1); nx++)
+                mark(active, ny * tilesX + nx);
+    }
+
+    /**
+     * Replaces the whole board with cells, given row-major
+     */
+    public synchronized void load(byte[] cells) {
+        if (cells.length != current.length)
+            throw new IllegalArgumentException("expected " + current.length + " cells");
+        System.arraycopy(cells, 0, current, 0, cells.length);
+        markAll();
+    }
+
+    public synchronized boolean hasConverged() {
+        return converged;
+    }
+
+    /**
+     * Number of tiles stepped by the last run, out of generations * getTileCount()
+     */
+    public synchronized long getTilesStepped() {
+        return tilesStepped;
+    }
+
+    /**
+     * Steps the board until a generation changes no cell or maxGenerations
+     * have run, and returns the number of generations computed. If the rule
+     * throws, every worker stops and the exception is rethrown here.
+     */
+    public synchronized int run(int maxGenerations) throws InterruptedException {
+        generations = 0;
+        limit = maxGenerations;
+        converged = false;
+        tilesStepped = 0;
+        if (maxGenerations <= 0)
+            return 0;
+        final Phaser phaser = new Phaser(nWorkers) {
+            protected boolean onAdvance(int phase, int registeredParties) {
+                return endGeneration();
+            }
+        };
+        resetCursors();
+        AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        Thread[] threads = new Thread[nWorkers];
+        for (int i = 0; i < nWorkers; i++) {
+            threads[i] = new Thread(new Worker(i, phaser, failure), "automata-worker-" + i);
+            threads[i].start();
+        }
+        try {
+            for (Thread t : threads)
+                t.join();
+        } catch (InterruptedException e) {
+            phaser.forceTermination();
+            for (Thread t : threads)
+                t.interrupt();
+            // A worker may still be inside stepTiles, writing the buffers;
+            // leaving before it finishes would hand them to the next caller
+            joinUninterruptibly(threads);
+            throw e;
+        }
+        Throwable t = failure.get();
+        if (t != null)
+            throw LaunderThrowable.launderThrowable(t);
+        return generations;
+    }
+
+    private static void joinUninterruptibly(Thread[] threads) {
+        boolean interrupted = false;
+        try {
+            for (Thread t : threads)
+                while (true) {
+                    try {
+                        t.join();
+                        break;
+                    } catch (InterruptedException e) {
+                        interrupted = true;
+                    }
+                }
+        } finally {
+            if (interrupted)
+                Thread.currentThread().interrupt();
+        }
+    }
+
+    // Runs in whichever worker arrives last, while the others wait in the Phaser
+    private boolean endGeneration() {
+        long total = 0;
+        for (int i = 0; i < nWorkers; i++) {
+            total += changed[i];
+            tilesStepped += stepped[i];
+        }
+        byte[] t = current;
+        current = next;
+        next = t;
+        AtomicLongArray bits = active;
+        active = nextActive;
+        nextActive = bits;
+        for (int i = 0; i < bits.length(); i++)
+            bits.set(i, 0);
+        generations++;
+        resetCursors();
+        converged = total == 0;
+        return converged || generations >= limit;
+    }
+
+    private void resetCursors() {
+        for (int i = 0; i < nWorkers; i++)
+            cursors[i].set(runStarts[i]);
+    }
+
+    private void markAll() {
+        for (int i = 0; i < active.length(); i++)
+            active.set(i, -1L);
+    }
+
+    private static void mark(AtomicLongArray bits, int tile) {
+        int word = tile >>> 6;
+        long bit = 1L << tile;
+        for (;;) {
+            long old = bits.get(word);
+            if ((old & bit) != 0 || bits.compareAndSet(word, old, old | bit))
+                return;
+        }
+    }
+
+    // First tile in [from, end) whose bit is set, or end
+    private static int nextSetTile(AtomicLongArray bits, int from, int end) {
+        int word = from >>> 6;
+        long w = bits.get(word) & (-1L << from);
+        for (;;) {
+            if (w != 0)
+                return Math.min((word << 6) + Long.numberOfTrailingZeros(w), end);
+            if (++word << 6 >= end)
+                return end;
+            w = bits.get(word);
+        }
+    }
+
+    private int index(int x, int y) {
+        if (x < 0 || x >= width || y < 0 || y >= height)
+            throw new IndexOutOfBoundsException("(" + x + ", " + y + ")");
+        return y * width + x;
+    }
+
+    private class Worker implements Runnable {
+        private final int id;
+        private final Phaser phaser;
+        private final AtomicReference<Throwable> failure;
+
+        Worker(int id, Phaser phaser, AtomicReference<Throwable> failure) {
+            this.id = id;
+            this.phaser = phaser;
+            this.failure = failure;
+        }
+
+        public void run() {
+            try {
+                while (!phaser.isTerminated()) {
+                    stepTiles();
+                    phaser.arriveAndAwaitAdvance();
+                }
+            } catch (Throwable t) {
+                // A worker that dies without arriving would leave the
+                // others waiting in the Phaser forever
+                failure.compareAndSet(null, t);
+                phaser.forceTermination();
+            }
+        }
+
+        private void stepTiles() {
+            byte[] src = current, dst = next;
+            AtomicLongArray bits = active, marks = nextActive;
+            long changedCells = 0, tiles = 0;
+            for (int i = 0; i < nWorkers; i++) {
+                int victim = (id + i) % nWorkers;
+                AtomicInteger cursor = cursors[victim];
+                int end = runEnds[victim];
+                int from;
+                // Claim [from, tile] in one CAS; only tile in it is active
+                while ((from = cursor.get()) < end) {
+                    int tile = nextSetTile(bits, from, end);
+                    if (tile == end) {
+                        cursor.compareAndSet(from, end);
+                    } else if (cursor.compareAndSet(from, tile + 1)) {
+                        changedCells += stepTile(tile, src, dst, marks);
+                        tiles++;
+                    }
+                }
+            }
+            changed[id] = changedCells;
+            stepped[id] = tiles;
+        }
+    }
+
+    private long stepTile(int tile, byte[] src, byte[] dst, AtomicLongArray marks) {
+        int tx = tile % tilesX, ty = tile / tilesX;
+        int x0 = tx * tileSize, y0 = ty * tileSize;
+        int x1 = Math.min(x0 + tileSize, width), y1 = Math.min(y0 + tileSize, height);
+        long changedCells = 0;
+        // Bit 3k + j set when a changed cell touches neighbour (tx + j - 1, ty + k - 1)
+        int touched = 0;
+        for (int y = y0; y < y1; y++) {
+            int row = y * width;
+            for (int x = x0; x < x1; x++) {
+                byte value = (byte) rule.computeValue(src, width, height, x, y);
+                dst[row + x] = value;
+                if (value != src[row + x]) {
+                    changedCells++;
+                    int j0 = x == x0 ? 0 : 1, j1 = x == x1 - 1 ? 2 : 1;
+                    int k0 = y == y0 ? 0 : 1, k1 = y == y1 - 1 ? 2 : 1;
+                    for (int k = k0; k <= k1; k++)
+                        for (int j = j0; j <= j1; j++)
+                            touched |= 1 << (3 * k + j);
+                }
+            }
+        }
+        int tilesY = tileCount / tilesX;
+        for (int k = 0; k < 3; k++)
+            for (int j = 0; j < 3; j++) {
+                int nx = tx + j - 1, ny = ty + k - 1;
+                if ((touched & (1 << (3 * k + j))) != 0
+                        && nx >= 0 && nx < tilesX && ny >= 0 && ny < tilesY)
+                    mark(marks, ny * tilesX + nx);
+            }
+        return changedCells;
+    }
+}
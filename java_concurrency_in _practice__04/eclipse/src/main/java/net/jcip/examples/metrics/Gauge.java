@@ -0,0 +1,11 @@
+package net.jcip.examples.metrics;
+
+/**
+ * Gauge
+ * <p/>
+ * A value sampled when it is read, such as a queue length or a count of
+ * live threads
+ */
+public interface Gauge {
+    long getValue();
+}
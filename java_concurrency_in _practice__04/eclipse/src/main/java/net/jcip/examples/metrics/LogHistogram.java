@@ -0,0 +1,137 @@
+package net.jcip.examples.metrics;
+
+import java.util.concurrent.atomic.*;
+
+import net.jcip.annotations.*;
+
+/**
+ * LogHistogram
+ * <p/>
+ * Lock-free histogram of non-negative longs, such as latencies in
+ * nanoseconds, in logarithmic buckets: every power of two is split into
+ * eight buckets, so a reported quantile is within 12.5% of the recorded
+ * value, and values below 8 are exact. Recording is a bucket increment on
+ * one of several stripes of buckets, picked as for StripedCounter, so
+ * threads recording the same value do not all hit one word.
+ * <p/>
+ * Reads add the stripes up while recording goes on, so they describe a
+ * recent snapshot rather than one instant.
+ */
+@ThreadSafe
+public class LogHistogram {
+    private static final int SUB_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+    // Exact buckets below SUB_BUCKETS, then SUB_BUCKETS per power of two up to 2^62
+    static final int BUCKETS = SUB_BUCKETS + (63 - SUB_BITS) * SUB_BUCKETS;
+    private static final int STRIPES;
+
+    static {
+        int ncpu = Runtime.getRuntime().availableProcessors();
+        int stripes = 1;
+        while (stripes < ncpu)
+            stripes <<= 1;
+        STRIPES = stripes;
+    }
+
+    private final AtomicLongArray[] stripes = new AtomicLongArray[STRIPES];
+    private final StripedCounter sum = new StripedCounter();
+    private final AtomicLong max = new AtomicLong();
+
+    public LogHistogram() {
+        for (int i = 0; i < STRIPES; i++)
+            stripes[i] = new AtomicLongArray(BUCKETS);
+    }
+
+    public void record(long value) {
+        if (value < 0)
+            throw new IllegalArgumentException("negative value: " + value);
+        stripes[ThreadProbe.get() & (STRIPES - 1)].getAndIncrement(bucket(value));
+        sum.add(value);
+        long m;
+        while (value > (m = max.get()))
+            if (max.compareAndSet(m, value))
+                break;
+    }
+
+    static int bucket(long value) {
+        if (value < SUB_BUCKETS)
+            return (int) value;
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int sub = (int) (value >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BITS + 1) * SUB_BUCKETS + sub;
+    }
+
+    /** The largest value that falls into the bucket */
+    static long upperBound(int bucket) {
+        if (bucket < SUB_BUCKETS)
+            return bucket;
+        int shift = bucket / SUB_BUCKETS - 1;
+        long lower = (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << shift;
+        return lower + (1L << shift) - 1;
+    }
+
+    private long[] counts() {
+        long[] counts = new long[BUCKETS];
+        for (AtomicLongArray stripe : stripes)
+            for (int b = 0; b < BUCKETS; b++)
+                counts[b] += stripe.get(b);
+        return counts;
+    }
+
+    public long getCount() {
+        long count = 0;
+        for (long c : counts())
+            count += c;
+        return count;
+    }
+
+    public long getSum() {
+        return sum.sum();
+    }
+
+    public long getMax() {
+        return max.get();
+    }
+
+    public double getMean() {
+        long count = getCount();
+        return count == 0 ? 0.0 : (double) getSum() / count;
+    }
+
+    /**
+     * Upper bound of the bucket holding the given quantile, e.g. 0.99 for the
+     * 99th percentile, never above the largest value recorded; 0 when empty
+     */
+    public long getQuantile(double quantile) {
+        if (quantile < 0.0 || quantile > 1.0)
+            throw new IllegalArgumentException("quantile out of [0, 1]: " + quantile);
+        long[] counts = counts();
+        long total = 0;
+        for (long c : counts)
+            total += c;
+        if (total == 0)
+            return 0;
+        long rank = Math.max(1, (long) Math.ceil(quantile * total));
+        long seen = 0;
+        for (int b = 0; b < BUCKETS; b++) {
+            seen += counts[b];
+            if (seen >= rank)
+                return Math.min(upperBound(b), getMax());
+        }
+        return getMax();
+    }
+
+    /** Only exact when nothing is recorded concurrently */
+    public void reset() {
+        for (AtomicLongArray stripe : stripes)
+            for (int b = 0; b < BUCKETS; b++)
+                stripe.set(b, 0);
+        sum.reset();
+        max.set(0);
+    }
+
+    public String toString() {
+        return String.format("count=%d mean=%.1f p50=%d p99=%d max=%d",
+                getCount(), getMean(), getQuantile(0.5), getQuantile(0.99), getMax());
+    }
+}
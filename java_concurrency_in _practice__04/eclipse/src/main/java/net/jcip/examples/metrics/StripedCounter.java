@@ -0,0 +1,159 @@
+package net.jcip.examples.metrics;
+
+import java.util.concurrent.atomic.*;
+
+import net.jcip.annotations.*;
+
+/**
+ * StripedCounter
+ * <p/>
+ * Counter that spreads contended updates over cells, like LongAdder. Updates
+ * go to a base field until a CAS on it fails; from then on each thread adds
+ * to the cell its probe selects, and a thread that still collides moves to
+ * another cell, doubling the cells up to the number of CPUs. Cells are padded
+ * so that two of them never share a cache line.
+ * <p/>
+ * The value is the sum of the base and the cells. It is exact once updates
+ * stop, but only a snapshot while they go on: it suits statistics, not
+ * sequence numbers or anything that must be unique.
+ */
+@ThreadSafe
+public class StripedCounter implements Gauge {
+    private static final int MAX_CELLS;
+
+    static {
+        int ncpu = Runtime.getRuntime().availableProcessors();
+        int cells = 1;
+        while (cells < ncpu)
+            cells <<= 1;
+        MAX_CELLS = cells;
+    }
+
+    private static final AtomicLongFieldUpdater<Cell> CELL_VALUE
+            = AtomicLongFieldUpdater.newUpdater(Cell.class, "value");
+
+    /** A long alone on its cache lines */
+    static final class Cell {
+        long p0, p1, p2, p3, p4, p5, p6;
+        volatile long value;
+        long q0, q1, q2, q3, q4, q5, q6;
+
+        Cell(long value) {
+            this.value = value;
+        }
+    }
+
+    private final AtomicLong base = new AtomicLong();
+    private volatile Cell[] cells;
+    // Held while cells are created or doubled
+    private final AtomicBoolean resizing = new AtomicBoolean();
+
+    public void increment() {
+        add(1L);
+    }
+
+    public void decrement() {
+        add(-1L);
+    }
+
+    public void add(long x) {
+        Cell[] cs = cells;
+        if (cs == null) {
+            long b = base.get();
+            if (base.compareAndSet(b, b + x))
+                return;
+        }
+        addToCell(x);
+    }
+
+    private void addToCell(long x) {
+        int h = ThreadProbe.get();
+        boolean collided = false;
+        while (true) {
+            Cell[] cs = cells;
+            if (cs == null) {
+                if (resizing.compareAndSet(false, true)) {
+                    try {
+                        if (cells == null) {
+                            Cell[] created = new Cell[2];
+                            created[h & 1] = new Cell(x);
+                            cells = created;
+                            return;
+                        }
+                    } finally {
+                        resizing.set(false);
+                    }
+                }
+                // Another thread is creating the cells; fall back on base meanwhile
+                long b = base.get();
+                if (base.compareAndSet(b, b + x))
+                    return;
+                continue;
+            }
+            int i = h & (cs.length - 1);
+            Cell c = cs[i];
+            if (c == null) {
+                if (resizing.compareAndSet(false, true)) {
+                    try {
+                        if (cells == cs && cs[i] == null) {
+                            cs[i] = new Cell(x);
+                            return;
+                        }
+                    } finally {
+                        resizing.set(false);
+                    }
+                }
+                h = ThreadProbe.advance();
+                continue;
+            }
+            long v = c.value;
+            if (CELL_VALUE.compareAndSet(c, v, v + x))
+                return;
+            if (collided && cs.length < MAX_CELLS && resizing.compareAndSet(false, true)) {
+                try {
+                    if (cells == cs) {
+                        Cell[] doubled = new Cell[cs.length * 2];
+                        System.arraycopy(cs, 0, doubled, 0, cs.length);
+                        cells = doubled;
+                    }
+                } finally {
+                    resizing.set(false);
+                }
+                collided = false;
+                continue;
+            }
+            collided = true;
+            h = ThreadProbe.advance();
+        }
+    }
+
+    public long sum() {
+        long sum = base.get();
+        Cell[] cs = cells;
+        if (cs != null) {
+            for (Cell c : cs)
+                if (c != null)
+                    sum += c.value;
+        }
+        return sum;
+    }
+
+    public long getValue() {
+        return sum();
+    }
+
+    /** Resets to zero; only exact when no update runs concurrently */
+    public void reset() {
+        base.set(0);
+        Cell[] cs = cells;
+        if (cs != null) {
+            for (Cell c : cs)
+                if (c != null)
+                    c.value = 0;
+        }
+    }
+
+    public String toString() {
+        return Long.toString(sum());
+    }
+}
@@ -0,0 +1,39 @@
+package net.jcip.examples.metrics;
+
+import java.util.concurrent.atomic.*;
+
+/**
+ * ThreadProbe
+ * <p/>
+ * Per-thread hash picking the stripe a thread updates. A thread keeps its
+ * probe while its updates go through and moves to another one when it
+ * collides with a thread on the same stripe.
+ */
+final class ThreadProbe {
+    private static final AtomicInteger seeder = new AtomicInteger();
+
+    private static final ThreadLocal<int[]> probe = new ThreadLocal<int[]>() {
+        protected int[] initialValue() {
+            // Golden-ratio spacing keeps the first few threads on different stripes
+            int seed = seeder.getAndAdd(0x9e3779b9);
+            return new int[]{seed != 0 ? seed : 1};
+        }
+    };
+
+    private ThreadProbe() {
+    }
+
+    static int get() {
+        return probe.get()[0];
+    }
+
+    static int advance() {
+        int[] p = probe.get();
+        int x = p[0];
+        x ^= x << 13;
+        x ^= x >>> 17;
+        x ^= x << 5;
+        p[0] = x;
+        return x;
+    }
+}
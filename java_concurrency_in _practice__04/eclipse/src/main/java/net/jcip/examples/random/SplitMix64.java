@@ -0,0 +1,74 @@
+package net.jcip.examples.random;
+
+import net.jcip.annotations.*;
+
+/**
+ * SplitMix64
+ * <p/>
+ * The SplittableRandom algorithm: a 64-bit counter advanced by an odd gamma
+ * and scrambled by a mixing function. Splitting derives both the seed and the
+ * gamma of the new generator, so the two sequences are independent. Also
+ * used to expand a single seed into the state of the other generators.
+ */
+@NotThreadSafe
+public class SplitMix64 extends SplittableGenerator {
+    static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+
+    private long seed;
+    private final long gamma;
+
+    public SplitMix64(long seed) {
+        this(seed, GOLDEN_GAMMA);
+    }
+
+    private SplitMix64(long seed, long gamma) {
+        this.seed = seed;
+        this.gamma = gamma;
+    }
+
+    static long mix64(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+
+    static int mix32(long z) {
+        z = (z ^ (z >>> 33)) * 0x62a9d9ed799705f5L;
+        return (int) (((z ^ (z >>> 28)) * 0xcb24d0a5c88c35b3L) >>> 32);
+    }
+
+    /** An odd gamma with enough bit transitions to mix well */
+    private static long mixGamma(long z) {
+        z = (z ^ (z >>> 33)) * 0xff51afd7ed558ccdL;
+        z = (z ^ (z >>> 33)) * 0xc4ceb9fe1a85ec53L;
+        z = (z ^ (z >>> 33)) | 1L;
+        int transitions = Long.bitCount(z ^ (z >>> 1));
+        return transitions < 24 ? z ^ 0xaaaaaaaaaaaaaaaaL : z;
+    }
+
+    public int nextInt() {
+        return mix32(seed += gamma);
+    }
+
+    public long nextLong() {
+        return mix64(seed += gamma);
+    }
+
+    public SplitMix64 split() {
+        return new SplitMix64(nextLong(), mixGamma(seed += gamma));
+    }
+
+    public void fill(long[] values) {
+        long s = seed;
+        for (int i = 0; i < values.length; i++)
+            values[i] = mix64(s += gamma);
+        seed = s;
+    }
+
+    public void fill(int[] values) {
+        long s = seed;
+        for (int i = 0; i < values.length; i++)
+            values[i] = mix32(s += gamma);
+        seed = s;
+    }
+}
@@ -0,0 +1,125 @@
+package net.jcip.examples.random;
+
+import java.util.*;
+import java.util.function.*;
+import java.util.stream.*;
+
+import net.jcip.annotations.*;
+
+/**
+ * SplittableGenerator
+ * <p/>
+ * Base of the pseudo-random generators in this package. Unlike
+ * AtomicPseudoRandom or ReentrantLockPseudoRandom, a generator is not shared:
+ * each thread or task owns one, so generating a number is a few arithmetic
+ * operations on fields no other core touches. A fork/join task that needs
+ * randomness for its subtasks hands each of them split(), a new generator
+ * seeded from this one, instead of sharing.
+ * <p/>
+ * Subclasses provide nextInt, nextLong and split; bounded values, doubles,
+ * bulk fills and streams are built on them here. Streams split the generator
+ * along with the stream, so they can run in parallel.
+ */
+@NotThreadSafe
+public abstract class SplittableGenerator {
+    public abstract int nextInt();
+
+    public abstract long nextLong();
+
+    /** A new, independently seeded generator; this one advances */
+    public abstract SplittableGenerator split();
+
+    /** Uniform in [0, bound), by multiplication and rejection rather than a biased remainder */
+    public int nextInt(int bound) {
+        if (bound <= 0)
+            throw new IllegalArgumentException("bound must be positive: " + bound);
+        long m = (nextInt() & 0xffffffffL) * bound;
+        int low = (int) m;
+        if (Integer.compareUnsigned(low, bound) < 0) {
+            int threshold = Integer.remainderUnsigned(-bound, bound);
+            while (Integer.compareUnsigned(low, threshold) < 0) {
+                m = (nextInt() & 0xffffffffL) * bound;
+                low = (int) m;
+            }
+        }
+        return (int) (m >>> 32);
+    }
+
+    /** Uniform in [0, 1) */
+    public double nextDouble() {
+        return (nextLong() >>> 11) * 0x1.0p-53;
+    }
+
+    public boolean nextBoolean() {
+        return nextInt() < 0;
+    }
+
+    public void fill(int[] values) {
+        for (int i = 0; i < values.length; i++)
+            values[i] = nextInt();
+    }
+
+    public void fill(long[] values) {
+        for (int i = 0; i < values.length; i++)
+            values[i] = nextLong();
+    }
+
+    public IntStream ints(long size) {
+        return ints(size, 0);
+    }
+
+    /** size values in [0, bound), or any int when bound is 0 */
+    public IntStream ints(long size, int bound) {
+        if (size < 0 || bound < 0)
+            throw new IllegalArgumentException();
+        return StreamSupport.intStream(new IntsSpliterator(split(), 0, size, bound), false);
+    }
+
+    private static class IntsSpliterator implements Spliterator.OfInt {
+        private final SplittableGenerator generator;
+        private final int bound;
+        private long index;
+        private final long fence;
+
+        IntsSpliterator(SplittableGenerator generator, long index, long fence, int bound) {
+            this.generator = generator;
+            this.index = index;
+            this.fence = fence;
+            this.bound = bound;
+        }
+
+        public IntsSpliterator trySplit() {
+            long i = index, mid = (i + fence) >>> 1;
+            if (mid <= i)
+                return null;
+            index = mid;
+            return new IntsSpliterator(generator.split(), i, mid, bound);
+        }
+
+        public boolean tryAdvance(IntConsumer action) {
+            if (index >= fence)
+                return false;
+            action.accept(next());
+            index++;
+            return true;
+        }
+
+        public void forEachRemaining(IntConsumer action) {
+            for (long i = index; i < fence; i++)
+                action.accept(next());
+            index = fence;
+        }
+
+        private int next() {
+            return bound == 0 ? generator.nextInt() : generator.nextInt(bound);
+        }
+
+        public long estimateSize() {
+            return fence - index;
+        }
+
+        public int characteristics() {
+            return SIZED | SUBSIZED | NONNULL | IMMUTABLE;
+        }
+    }
+}
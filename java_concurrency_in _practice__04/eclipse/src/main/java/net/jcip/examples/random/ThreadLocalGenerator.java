@@ -0,0 +1,32 @@
+package net.jcip.examples.random;
+
+import net.jcip.annotations.*;
+
+/**
+ * ThreadLocalGenerator
+ * <p/>
+ * One Xoroshiro128PlusPlus per thread, like ThreadLocalRandom. Only the
+ * seeding of a thread's generator is synchronized; after that current()
+ * is a thread-local lookup and generating touches nothing shared.
+ */
+@ThreadSafe
+public final class ThreadLocalGenerator {
+    @GuardedBy("seeder") private static final SplitMix64 seeder
+            = new SplitMix64(SplitMix64.mix64(System.currentTimeMillis()) ^ System.nanoTime());
+
+    private static final ThreadLocal<Xoroshiro128PlusPlus> generators = new ThreadLocal<Xoroshiro128PlusPlus>() {
+        protected Xoroshiro128PlusPlus initialValue() {
+            synchronized (seeder) {
+                return new Xoroshiro128PlusPlus(seeder.nextLong());
+            }
+        }
+    };
+
+    private ThreadLocalGenerator() {
+    }
+
+    /** The calling thread's generator; must not be handed to other threads */
+    public static SplittableGenerator current() {
+        return generators.get();
+    }
+}
@@ -0,0 +1,37 @@
+package net.jcip.examples.random;
+
+import net.jcip.annotations.*;
+
+/**
+ * XorShift32
+ * <p/>
+ * The xorshift generator of PseudoRandom and XorShift as a SplittableGenerator.
+ * Only 32 bits of state and a period of 2^32 - 1, so it suits quick
+ * randomization such as test data, not anything that draws billions of
+ * numbers; nextLong takes two steps.
+ */
+@NotThreadSafe
+public class XorShift32 extends SplittableGenerator {
+    private int x;
+
+    public XorShift32(long seed) {
+        int s = SplitMix64.mix32(seed);
+        x = s != 0 ? s : 0x9e3779b9; // zero is a fixed point
+    }
+
+    public int nextInt() {
+        int s = x;
+        s ^= s << 6;
+        s ^= s >>> 21;
+        s ^= s << 7;
+        return x = s;
+    }
+
+    public long nextLong() {
+        return ((long) nextInt() << 32) | (nextInt() & 0xffffffffL);
+    }
+
+    public XorShift32 split() {
+        return new XorShift32(nextLong());
+    }
+}
@@ -0,0 +1,65 @@
+package net.jcip.examples.random;
+
+import net.jcip.annotations.*;
+
+/**
+ * Xoroshiro128PlusPlus
+ * <p/>
+ * xoroshiro128++ by Blackman and Vigna: 128 bits of state, period 2^128 - 1,
+ * and an output scrambler that passes the usual statistical test suites.
+ * The state is expanded from a 64-bit seed with SplitMix64, and split()
+ * seeds the new generator from this one's next output the same way.
+ */
+@NotThreadSafe
+public class Xoroshiro128PlusPlus extends SplittableGenerator {
+    private long s0, s1;
+
+    public Xoroshiro128PlusPlus(long seed) {
+        s0 = SplitMix64.mix64(seed += SplitMix64.GOLDEN_GAMMA);
+        s1 = SplitMix64.mix64(seed + SplitMix64.GOLDEN_GAMMA);
+        if ((s0 | s1) == 0)
+            s1 = SplitMix64.GOLDEN_GAMMA; // the all-zero state never leaves zero
+    }
+
+    public long nextLong() {
+        long x0 = s0, x1 = s1;
+        long result = Long.rotateLeft(x0 + x1, 17) + x0;
+        x1 ^= x0;
+        s0 = Long.rotateLeft(x0, 49) ^ x1 ^ (x1 << 21);
+        s1 = Long.rotateLeft(x1, 28);
+        return result;
+    }
+
+    public int nextInt() {
+        return (int) (nextLong() >>> 32);
+    }
+
+    public Xoroshiro128PlusPlus split() {
+        return new Xoroshiro128PlusPlus(nextLong());
+    }
+
+    /** The state stays in locals for the whole loop */
+    public void fill(long[] values) {
+        long x0 = s0, x1 = s1;
+        for (int i = 0; i < values.length; i++) {
+            values[i] = Long.rotateLeft(x0 + x1, 17) + x0;
+            x1 ^= x0;
+            x0 = Long.rotateLeft(x0, 49) ^ x1 ^ (x1 << 21);
+            x1 = Long.rotateLeft(x1, 28);
+        }
+        s0 = x0;
+        s1 = x1;
+    }
+
+    public void fill(int[] values) {
+        long x0 = s0, x1 = s1;
+        for (int i = 0; i < values.length; i++) {
+            values[i] = (int) ((Long.rotateLeft(x0 + x1, 17) + x0) >>> 32);
+            x1 ^= x0;
+            x0 = Long.rotateLeft(x0, 49) ^ x1 ^ (x1 << 21);
+            x1 = Long.rotateLeft(x1, 28);
+        }
+        s0 = x0;
+        s1 = x1;
+    }
+}
@@ -0,0 +1,138 @@
+package modernjavainaction.appc;
+
+import java.util.*;
+import java.util.function.*;
+import java.util.stream.*;
+
+/**
+ * Runs any number of downstream collectors over a stream in a single pass, the
+ * way Collectors.teeing runs two. The container is an array holding one
+ * container per downstream collector, and every function delegates to the
+ * downstream functions slot by slot, so a parallel stream combines each
+ * collector with its own combiner. Unlike StreamForker, no threads or queues
+ * are involved.
+ *
+ * Instances are immutable: fork returns a new collector with one more key.
+ */
+public class MultiCollector<T> implements Collector<T, Object[], MultiCollector.Results> {
+
+    private final List<Object> keys;
+    private final List<Collector<? super T, Object, ?>> collectors;
+
+    public MultiCollector() {
+        this(Collections.emptyList(), Collections.emptyList());
+    }
+
+    private MultiCollector(List<Object> keys, List<Collector<? super T, Object, ?>> collectors) {
+        this.keys = keys;
+        this.collectors = collectors;
+    }
+
+    public MultiCollector<T> fork(Object key, Collector<? super T, ?, ?> collector) {
+        if (keys.contains(key)) {
+            throw new IllegalArgumentException("duplicate key: " + key);
+        }
+        List<Object> k = new ArrayList<>(keys);
+        k.add(key);
+        List<Collector<? super T, Object, ?>> c = new ArrayList<>(collectors);
+        c.add(uncheckedCast(Objects.requireNonNull(collector)));
+        return new MultiCollector<T>(Collections.unmodifiableList(k), Collections.unmodifiableList(c));
+    }
+
+    @Override
+    public Supplier<Object[]> supplier() {
+        List<Supplier<Object>> suppliers = collectors.stream()
+                .map(Collector::supplier)
+                .collect(Collectors.toList());
+        return () -> {
+            Object[] containers = new Object[suppliers.size()];
+            for (int i = 0; i < containers.length; i++) {
+                containers[i] = suppliers.get(i).get();
+            }
+            return containers;
+        };
+    }
+
+    @Override
+    public BiConsumer<Object[], T> accumulator() {
+        List<BiConsumer<Object, ? super T>> accumulators = collectors.stream()
+                .map(Collector::accumulator)
+                .collect(Collectors.toList());
+        return (containers, t) -> {
+            for (int i = 0; i < containers.length; i++) {
+                accumulators.get(i).accept(containers[i], t);
+            }
+        };
+    }
+
+    @Override
+    public BinaryOperator<Object[]> combiner() {
+        List<BinaryOperator<Object>> combiners = collectors.stream()
+                .map(Collector::combiner)
+                .collect(Collectors.toList());
+        return (left, right) -> {
+            for (int i = 0; i < left.length; i++) {
+                left[i] = combiners.get(i).apply(left[i], right[i]);
+            }
+            return left;
+        };
+    }
+
+    @Override
+    public Function<Object[], Results> finisher() {
+        List<Function<Object, ?>> finishers = collectors.stream()
+                .map(Collector::finisher)
+                .collect(Collectors.toList());
+        return containers -> {
+            Map<Object, Object> results = new LinkedHashMap<>();
+            for (int i = 0; i < containers.length; i++) {
+                results.put(keys.get(i), finishers.get(i).apply(containers[i]));
+            }
+            return new Results(results);
+        };
+    }
+
+    // Unordered only if every downstream collector is; never concurrent, since
+    // the containers of different downstream collectors are updated together
+    @Override
+    public Set<Characteristics> characteristics() {
+        boolean unordered = collectors.stream()
+                .allMatch(c -> c.characteristics().contains(Characteristics.UNORDERED));
+        return unordered ? EnumSet.of(Characteristics.UNORDERED) : EnumSet.noneOf(Characteristics.class);
+    }
+
+    /**
+     * The only unchecked casts in this class, both safe:
+     * - fork stores a Collector<? super T, A, ?> as Collector<? super T, Object, ?>.
+     *   Its containers are only created by its own supplier, kept in its own
+     *   slot, and handed back to its own accumulator, combiner and finisher, so
+     *   every Object it receives really is an A.
+     * - Results.get returns a result as whatever type the caller asks for, like
+     *   StreamForker.Results; the caller knows which collector the key forked.
+     */
+    @SuppressWarnings("unchecked")
+    private static <R> R uncheckedCast(Object o) {
+        return (R) o;
+    }
+
+    public static class Results implements StreamForker.Results {
+        private final Map<Object, Object> results;
+
+        Results(Map<Object, Object> results) {
+            this.results = results;
+        }
+
+        @Override
+        public <R> R get(Object key) {
+            if (!results.containsKey(key)) {
+                throw new NoSuchElementException("no collector for key: " + key);
+            }
+            return uncheckedCast(results.get(key));
+        }
+
+        @Override
+        public String toString() {
+            return results.toString();
+        }
+    }
+}
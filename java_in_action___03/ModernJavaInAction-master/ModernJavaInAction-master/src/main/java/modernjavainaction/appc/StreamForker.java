@@ -7,14 +7,51 @@ import java.util.stream.*;
 
 /**
  * Adapted from http://mail.openjdk.java.net/pipermail/lambda-dev/2013-November/011516.html
+ *
+ * The source is traversed once, in parallel if the stream is parallel, and its
+ * elements are handed to the forks in arrays of up to batchSize elements. Every
+ * fork reads from its own bounded queue of batches, so a slow fork holds back
+ * the source instead of letting the queues grow, and memory stays the same
+ * however long the stream is. A batch is shared by all the forks, which only
+ * read it. Forks of a parallel source see the elements in no particular order.
+ *
+ * Each fork blocks its thread until the source is exhausted, so the executor
+ * must be able to run all the forks at the same time; the default starts a
+ * thread per fork.
  */
 public class StreamForker<T> {
 
+    public static final int DEFAULT_BATCH_SIZE = 1024;
+    public static final int DEFAULT_QUEUE_CAPACITY = 16;
+
+    private static final Executor THREAD_PER_FORK = r -> {
+        Thread t = new Thread(r, "stream-fork");
+        t.setDaemon(true);
+        t.start();
+    };
+
     private final Stream<T> stream;
+    private final Executor executor;
+    private final int batchSize;
+    private final int queueCapacity;
     private final Map<Object, Function<Stream<T>, ?>> forks = new HashMap<>();
 
     public StreamForker(Stream<T> stream) {
-        this.stream = stream;
+        this(stream, THREAD_PER_FORK);
+    }
+
+    public StreamForker(Stream<T> stream, Executor executor) {
+        this(stream, executor, DEFAULT_BATCH_SIZE, DEFAULT_QUEUE_CAPACITY);
+    }
+
+    public StreamForker(Stream<T> stream, Executor executor, int batchSize, int queueCapacity) {
+        if (batchSize <= 0 || queueCapacity <= 0) {
+            throw new IllegalArgumentException("batch size and queue capacity must be positive");
+        }
+        this.stream = Objects.requireNonNull(stream);
+        this.executor = Objects.requireNonNull(executor);
+        this.batchSize = batchSize;
+        this.queueCapacity = queueCapacity;
     }
 
     public StreamForker<T> fork(Object key, Function<Stream<T>, ?> f) {
@@ -25,58 +62,107 @@ public class StreamForker<T> {
     public Results getResults() {
         ForkingStreamConsumer<T> consumer = build();
         try {
-            stream.sequential().forEach(consumer);
-        } finally {
-            consumer.finish();
+            boolean parallel = stream.isParallel();
+            Spliterator<T> source = stream.spliterator();
+            if (parallel) {
+                long threshold = source.estimateSize() / (ForkJoinPool.getCommonPoolParallelism() * 4L) + 1;
+                new SourceTask<>(source, threshold, consumer).invoke();
+            } else {
+                consumer.drain(source);
+            }
+        } catch (RuntimeException | Error e) {
+            consumer.abort();
+            throw e;
         }
+        consumer.finish();
         return consumer;
     }
 
     private ForkingStreamConsumer<T> build() {
-        List<BlockingQueue<T>> queues = new ArrayList<>();
-
-        Map<Object, Future<?>> actions =
-                forks.entrySet().stream().reduce(
-                        new HashMap<Object, Future<?>>(),
-                        (map, e) -> {
-                            map.put(e.getKey(),
-                                    getOperationResult(queues, e.getValue()));
-                            return map;
-                        },
-                        (m1, m2) -> {
-                            m1.putAll(m2);
-                            return m1;
-                        });
-
-        return new ForkingStreamConsumer<>(queues, actions);
+        List<Fork> queues = new ArrayList<>();
+        Map<Object, Future<?>> actions = new HashMap<>();
+        ForkingStreamConsumer<T> consumer = new ForkingStreamConsumer<>(queues, actions, batchSize);
+        try {
+            forks.forEach((key, f) -> actions.put(key, getOperationResult(queues, f)));
+        } catch (RuntimeException | Error e) {
+            // The executor rejected a fork; the ones already started would wait for a batch forever
+            consumer.abort();
+            throw e;
+        }
+        return consumer;
     }
 
-    private Future<?> getOperationResult(List<BlockingQueue<T>> queues, Function<Stream<T>, ?> f) {
-        BlockingQueue<T> queue = new LinkedBlockingQueue<>();
-        queues.add(queue);
-        Spliterator<T> spliterator = new BlockingQueueSpliterator<>(queue);
+    private Future<?> getOperationResult(List<Fork> queues, Function<Stream<T>, ?> f) {
+        Fork fork = new Fork(new ArrayBlockingQueue<>(queueCapacity));
+        queues.add(fork);
+        Spliterator<T> spliterator = new BlockingQueueSpliterator<>(fork.queue);
         Stream<T> source = StreamSupport.stream(spliterator, false);
-        return CompletableFuture.supplyAsync( () -> f.apply(source) );
+        executor.execute(() -> {
+            try {
+                fork.result.complete(f.apply(source));
+            } catch (Throwable t) {
+                fork.result.completeExceptionally(t);
+            }
+        });
+        return fork.result;
     }
 
     public static interface Results {
         public <R> R get(Object key);
     }
 
-    private static class ForkingStreamConsumer<T> implements Consumer<T>, Results {
-        static final Object END_OF_STREAM = new Object();
+    // A fork's queue of batches, and the result that tells producers to stop feeding it
+    private static class Fork {
+        final BlockingQueue<Object[]> queue;
+        final CompletableFuture<Object> result = new CompletableFuture<>();
 
-        private final List<BlockingQueue<T>> queues;
+        Fork(BlockingQueue<Object[]> queue) {
+            this.queue = queue;
+        }
+    }
+
+    private static class ForkingStreamConsumer<T> implements Results {
+        static final Object[] END_OF_STREAM = new Object[0];
+        static final Object[] SOURCE_FAILED = new Object[0];
+
+        private final List<Fork> forks;
         private final Map<Object, Future<?>> actions;
+        private final int batchSize;
 
-        ForkingStreamConsumer(List<BlockingQueue<T>> queues, Map<Object, Future<?>> actions) {
-            this.queues = queues;
+        ForkingStreamConsumer(List<Fork> forks, Map<Object, Future<?>> actions, int batchSize) {
+            this.forks = forks;
             this.actions = actions;
+            this.batchSize = batchSize;
         }
 
-        @Override
-        public void accept(T t) {
-            queues.forEach(q -> q.add(t));
+        // Runs on every thread traversing part of the source, each with its own batch
+        void drain(Spliterator<T> spliterator) {
+            Object[][] batch = { new Object[batchSize] };
+            int[] count = { 0 };
+            spliterator.forEachRemaining(t -> {
+                batch[0][count[0]++] = t;
+                if (count[0] == batchSize) {
+                    publish(batch[0]);
+                    batch[0] = new Object[batchSize];
+                    count[0] = 0;
+                }
+            });
+            if (count[0] > 0) {
+                publish(Arrays.copyOf(batch[0], count[0]));
+            }
+        }
+
+        // Blocks while a fork's queue is full, unless that fork has already returned
+        private void publish(Object[] batch) {
+            for (Fork fork : forks) {
+                try {
+                    while (!fork.result.isDone() && !fork.queue.offer(batch, 10, TimeUnit.MILLISECONDS)) {
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new CancellationException("interrupted while handing a batch to a fork");
+                }
+            }
         }
 
         @Override
@@ -89,35 +175,93 @@ public class StreamForker<T> {
         }
 
         void finish() {
-            accept((T) END_OF_STREAM);
+            publish(END_OF_STREAM);
+        }
+
+        void abort() {
+            boolean interrupted = Thread.interrupted();
+            try {
+                publish(SOURCE_FAILED);
+            } finally {
+                if (interrupted) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+    }
+
+    // Splits the source the way a parallel stream would and drains each piece into its own batches
+    private static class SourceTask<T> extends RecursiveAction {
+        private final Spliterator<T> spliterator;
+        private final long threshold;
+        private final ForkingStreamConsumer<T> consumer;
+
+        SourceTask(Spliterator<T> spliterator, long threshold, ForkingStreamConsumer<T> consumer) {
+            this.spliterator = spliterator;
+            this.threshold = threshold;
+            this.consumer = consumer;
+        }
+
+        @Override
+        protected void compute() {
+            Spliterator<T> prefix;
+            if (spliterator.estimateSize() > threshold && (prefix = spliterator.trySplit()) != null) {
+                invokeAll(new SourceTask<>(prefix, threshold, consumer),
+                          new SourceTask<>(spliterator, threshold, consumer));
+            } else {
+                consumer.drain(spliterator);
+            }
         }
     }
 
     private static class BlockingQueueSpliterator<T> implements Spliterator<T> {
-        private final BlockingQueue<T> q;
+        private final BlockingQueue<Object[]> q;
+        private Object[] batch = new Object[0];
+        private int index;
 
-        BlockingQueueSpliterator(BlockingQueue<T> q) {
+        BlockingQueueSpliterator(BlockingQueue<Object[]> q) {
             this.q = q;
         }
 
         @Override
         public boolean tryAdvance(Consumer<? super T> action) {
-            T t;
-            while (true) {
-                try {
-                    t = q.take();
-                    break;
-                }
-                catch (InterruptedException e) {
-                }
+            if (!nextBatch()) {
+                return false;
             }
+            action.accept((T) batch[index++]);
+            return true;
+        }
 
-            if (t != ForkingStreamConsumer.END_OF_STREAM) {
-                action.accept(t);
-                return true;
+        @Override
+        public void forEachRemaining(Consumer<? super T> action) {
+            while (nextBatch()) {
+                Object[] b = batch;
+                int i = index;
+                index = b.length;
+                for (; i < b.length; i++) {
+                    action.accept((T) b[i]);
+                }
             }
+        }
 
-            return false;
+        // Takes batches until one has an element left, or the source is exhausted
+        private boolean nextBatch() {
+            while (index == batch.length) {
+                if (batch == ForkingStreamConsumer.END_OF_STREAM) {
+                    return false;
+                }
+                try {
+                    batch = q.take();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new CancellationException("fork interrupted");
+                }
+                if (batch == ForkingStreamConsumer.SOURCE_FAILED) {
+                    throw new CancellationException("source stream failed");
+                }
+                index = 0;
+            }
+            return true;
         }
 
         @Override
@@ -127,7 +271,7 @@ public class StreamForker<T> {
 
         @Override
         public long estimateSize() {
-            return 0;
+            return Long.MAX_VALUE;
         }
 
         @Override
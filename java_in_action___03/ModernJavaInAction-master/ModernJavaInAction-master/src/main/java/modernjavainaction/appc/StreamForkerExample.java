@@ -12,6 +12,7 @@ public class StreamForkerExample {
 
     public static void main(String[] args) throws Exception {
         processMenu();
+        processMenuSinglePass();
     }
 
     private static void processMenu() {
@@ -36,4 +37,25 @@ public class StreamForkerExample {
         System.out.println("Most caloric dish: " + mostCaloricDish);
         System.out.println("Dishes by type: " + dishesByType);
     }
+
+    // The same four aggregations in one traversal, without fork threads or queues
+    private static void processMenuSinglePass() {
+        MultiCollector.Results results = menu.parallelStream().collect(new MultiCollector<Dish>()
+                .fork("shortMenu", mapping(Dish::getName, joining(", ")))
+                .fork("totalCalories", summingInt(Dish::getCalories))
+                .fork("mostCaloricDish", collectingAndThen(
+                        reducing((Dish d1, Dish d2) -> d1.getCalories() > d2.getCalories() ? d1 : d2),
+                        Optional::get))
+                .fork("dishesByType", groupingBy(Dish::getType)));
+
+        String shortMenu = results.get("shortMenu");
+        int totalCalories = results.get("totalCalories");
+        Dish mostCaloricDish = results.get("mostCaloricDish");
+        Map<Dish.Type, List<Dish>> dishesByType = results.get("dishesByType");
+
+        System.out.println("Short menu: " + shortMenu);
+        System.out.println("Total calories: " + totalCalories);
+        System.out.println("Most caloric dish: " + mostCaloricDish);
+        System.out.println("Dishes by type: " + dishesByType);
+    }
 }
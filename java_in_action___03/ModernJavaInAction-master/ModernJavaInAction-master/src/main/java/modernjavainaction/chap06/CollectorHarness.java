@@ -7,6 +7,13 @@ public class CollectorHarness {
   public static void main(String[] args) {
     //System.out.println("Partitioning done in: " + execute(PartitionPrimeNumbers::partitionPrimes) + " msecs");
     System.out.println("Partitioning done in: " + execute(PartitionPrimeNumbers::partitionPrimesWithCustomCollector) + " msecs");
+    System.out.println("Partitioning with sieve done in: " + execute(PartitionPrimeNumbers::partitionPrimesWithSieve) + " msecs");
+    System.out.println("Sieving done in: " + execute(PrimeSieve::primes) + " msecs");
+
+    long limit = args.length > 0 ? Long.parseLong(args[0]) : 10_000_000_000L;
+    long start = System.nanoTime();
+    long count = PrimeSieve.count(limit);
+    System.out.println(count + " primes up to " + limit + " counted in " + (System.nanoTime() - start) / 1_000_000 + " msecs");
   }
 
   private static long execute(Consumer<Integer> primePartitioner) {
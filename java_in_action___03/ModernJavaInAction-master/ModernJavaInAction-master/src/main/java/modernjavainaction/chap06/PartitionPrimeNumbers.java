@@ -23,6 +23,7 @@ public class PartitionPrimeNumbers {
   public static void main(String ... args) {
     System.out.println("Numbers partitioned in prime and non-prime: " + partitionPrimes(100));
     System.out.println("Numbers partitioned in prime and non-prime: " + partitionPrimesWithCustomCollector(100));
+    System.out.println("Numbers partitioned in prime and non-prime: " + partitionPrimesWithSieve(100));
   }
 
   public static Map<Boolean, List<Integer>> partitionPrimes(int n) {
@@ -40,6 +41,13 @@ public class PartitionPrimeNumbers {
     return IntStream.rangeClosed(2, n).boxed().collect(new PrimeNumbersCollector());
   }
 
+  // The same partition read off a PrimeSieve, for comparison: the boxing here is
+  // all that is left of the cost
+  public static Map<Boolean, List<Integer>> partitionPrimesWithSieve(int n) {
+    PrimeSieve sieve = PrimeSieve.sieve(n);
+    return IntStream.rangeClosed(2, n).boxed().collect(partitioningBy(candidate -> sieve.isPrime(candidate)));
+  }
+
   public static boolean isPrime(List<Integer> primes, Integer candidate) {
     double candidateRoot = Math.sqrt(candidate);
     //return takeWhile(primes, i -> i <= candidateRoot).stream().noneMatch(i -> candidate % i == 0);
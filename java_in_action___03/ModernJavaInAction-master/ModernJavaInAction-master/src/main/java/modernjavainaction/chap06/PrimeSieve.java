@@ -0,0 +1,235 @@
+package modernjavainaction.chap06;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+
+// The primes up to a limit with a segmented Sieve of Eratosthenes. Only odd
+// numbers are sieved, one bit each, in segments of 32KB of bits that stay in
+// the L1/L2 cache while every base prime up to the square root of the limit
+// crosses off its multiples. Segments are independent, so fork/join tasks
+// sieve ranges of them in parallel; nothing is boxed.
+//
+// sieve(limit) keeps the bits, one per odd number, which is 625MB for 10^10;
+// count(limit) keeps only a segment per task and counts as it goes, so it
+// reaches any limit the time allows.
+public class PrimeSieve {
+
+  // Odd numbers per segment: 32KB of bits
+  private static final int SEGMENT_BITS = 1 << 18;
+  private static final int SEGMENT_WORDS = SEGMENT_BITS / 64;
+  // Bit i of the sieve stands for 2i + 1, so a long[] addresses up to this many numbers
+  public static final long MAX_SIEVE_LIMIT = ((long) (Integer.MAX_VALUE - 8) * 64) * 2 - 1;
+
+  private final long limit;
+  // Bit i set when 2i + 1 is prime; 2 is handled apart
+  private final long[] bits;
+  private final long count;
+
+  private PrimeSieve(long limit, long[] bits, long count) {
+    this.limit = limit;
+    this.bits = bits;
+    this.count = count;
+  }
+
+  public static PrimeSieve sieve(long limit) {
+    if (limit > MAX_SIEVE_LIMIT) {
+      throw new IllegalArgumentException("Limit too large to keep the sieve: " + limit + ", use count");
+    }
+    long oddNumbers = oddNumbers(limit);
+    long[] bits = new long[(int) ((oddNumbers + 63) / 64)];
+    return new PrimeSieve(limit, bits, run(limit, bits));
+  }
+
+  public static long count(long limit) {
+    return run(limit, null);
+  }
+
+  public static int[] primes(int limit) {
+    return sieve(limit).toIntArray();
+  }
+
+  public long getLimit() {
+    return limit;
+  }
+
+  public long count() {
+    return count;
+  }
+
+  public boolean isPrime(long n) {
+    if (n < 0 || n > limit) {
+      throw new IllegalArgumentException(n + " is outside the sieve, 0 to " + limit);
+    }
+    if ((n & 1) == 0) {
+      return n == 2;
+    }
+    long i = n >>> 1;
+    return (bits[(int) (i >>> 6)] & (1L << i)) != 0;
+  }
+
+  // The smallest prime at least n, or -1 when there is none up to the limit
+  public long nextPrime(long n) {
+    if (n <= 2) {
+      return limit >= 2 ? 2 : -1;
+    }
+    // The first odd number from n on
+    long i = n >>> 1;
+    int word = (int) (i >>> 6);
+    if (word >= bits.length) {
+      return -1;
+    }
+    long candidates = bits[word] & (-1L << i);
+    while (candidates == 0) {
+      if (++word == bits.length) {
+        return -1;
+      }
+      candidates = bits[word];
+    }
+    return 2 * ((long) word * 64 + Long.numberOfTrailingZeros(candidates)) + 1;
+  }
+
+  public int[] toIntArray() {
+    if (limit > Integer.MAX_VALUE) {
+      throw new IllegalStateException("Primes up to " + limit + " do not all fit in an int");
+    }
+    int[] primes = new int[(int) count];
+    int next = 0;
+    if (limit >= 2) {
+      primes[next++] = 2;
+    }
+    for (int word = 0; word < bits.length; word++) {
+      for (long w = bits[word]; w != 0; w &= w - 1) {
+        primes[next++] = 2 * (word * 64 + Long.numberOfTrailingZeros(w)) + 1;
+      }
+    }
+    return primes;
+  }
+
+  private static long oddNumbers(long limit) {
+    return limit < 1 ? 0 : (limit + 1) / 2;
+  }
+
+  // Sieves into bits when not null, and returns the number of primes up to limit
+  private static long run(long limit, long[] bits) {
+    if (limit < 2) {
+      return 0;
+    }
+    long oddNumbers = oddNumbers(limit);
+    long segments = (oddNumbers + SEGMENT_BITS - 1) / SEGMENT_BITS;
+    int parallelism = ForkJoinTask.inForkJoinPool()
+        ? ForkJoinTask.getPool().getParallelism()
+        : ForkJoinPool.getCommonPoolParallelism();
+    long grain = Math.max(1, segments / (parallelism * 8L));
+    SegmentTask task = new SegmentTask(basePrimes(limit), oddNumbers, bits, 0, segments, grain);
+    long oddPrimes = ForkJoinTask.inForkJoinPool() ? task.invoke() : ForkJoinPool.commonPool().invoke(task);
+    return oddPrimes + 1;
+  }
+
+  // The odd primes up to the square root of limit, with a plain sieve
+  private static int[] basePrimes(long limit) {
+    int root = (int) Math.sqrt((double) limit);
+    while ((long) (root + 1) * (root + 1) <= limit) {
+      root++;
+    }
+    while ((long) root * root > limit) {
+      root--;
+    }
+    boolean[] composite = new boolean[root + 1];
+    int[] primes = new int[root + 1];
+    int count = 0;
+    for (int i = 3; i <= root; i += 2) {
+      if (!composite[i]) {
+        primes[count++] = i;
+        for (long j = (long) i * i; j <= root; j += 2 * i) {
+          composite[(int) j] = true;
+        }
+      }
+    }
+    return Arrays.copyOf(primes, count);
+  }
+
+  private static class SegmentTask extends RecursiveTask<Long> {
+
+    private final int[] basePrimes;
+    private final long oddNumbers;
+    private final long[] bits;
+    private final long from;
+    private final long to;
+    private final long grain;
+
+    SegmentTask(int[] basePrimes, long oddNumbers, long[] bits, long from, long to, long grain) {
+      this.basePrimes = basePrimes;
+      this.oddNumbers = oddNumbers;
+      this.bits = bits;
+      this.from = from;
+      this.to = to;
+      this.grain = grain;
+    }
+
+    @Override
+    protected Long compute() {
+      if (to - from > grain) {
+        long mid = from + (to - from) / 2;
+        SegmentTask left = new SegmentTask(basePrimes, oddNumbers, bits, from, mid, grain);
+        left.fork();
+        long right = new SegmentTask(basePrimes, oddNumbers, bits, mid, to, grain).compute();
+        return left.join() + right;
+      }
+      // Counting only: one segment buffer, reused for every segment of this task
+      long[] buffer = bits == null ? new long[SEGMENT_WORDS] : null;
+      long count = 0;
+      for (long segment = from; segment < to; segment++) {
+        long first = segment * SEGMENT_BITS;
+        int length = (int) Math.min(SEGMENT_BITS, oddNumbers - first);
+        if (bits != null) {
+          count += sieveSegment(bits, (int) (segment * SEGMENT_WORDS), first, length);
+        } else {
+          count += sieveSegment(buffer, 0, first, length);
+        }
+      }
+      return count;
+    }
+
+    // Sets the bits of the odd primes among 2i + 1 for i in [first, first + length),
+    // in words from offset on, and returns how many there are
+    private long sieveSegment(long[] words, int offset, long first, int length) {
+      int wordCount = (length + 63) >>> 6;
+      Arrays.fill(words, offset, offset + wordCount, -1L);
+      if ((length & 63) != 0) {
+        words[offset + wordCount - 1] = (1L << length) - 1;
+      }
+      long low = 2 * first + 1;
+      long high = 2 * (first + length - 1) + 1;
+      for (int p : basePrimes) {
+        long square = (long) p * p;
+        if (square > high) {
+          break;
+        }
+        long start = square;
+        if (start < low) {
+          // First odd multiple of p from low on
+          start = (low + p - 1) / p * p;
+          if ((start & 1) == 0) {
+            start += p;
+          }
+        }
+        for (long i = (start >>> 1) - first; i < length; i += p) {
+          words[offset + (int) (i >>> 6)] &= ~(1L << i);
+        }
+      }
+      if (first == 0) {
+        // 1 is not prime
+        words[offset] &= ~1L;
+      }
+      long count = 0;
+      for (int w = offset; w < offset + wordCount; w++) {
+        count += Long.bitCount(words[w]);
+      }
+      return count;
+    }
+
+  }
+
+}
@@ -0,0 +1,255 @@
+package modernjavainaction.chap07;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.function.IntToLongFunction;
+
+// Exact word and bigram counts in primitive open-addressing tables. Every
+// distinct word is interned once into a byte pool and coded as an int id; word
+// counts are indexed by id and a bigram is the long made of its two ids, so
+// counting a word allocates nothing once its id exists. Ids are local to a
+// table: merging re-interns the following table's words and translates its
+// bigrams through the resulting id map. Hash slots carry the word hash and a
+// bigram slot holds its count next to its key, so most probes touch a single
+// cache line.
+public class ExactWordFrequencies implements WordFrequencies<ExactWordFrequencies> {
+
+  private static final long NO_PAIR = -1L;
+
+  private byte[] pool = new byte[1 << 12];
+  private int poolSize;
+  private int[] offsets = new int[256];
+  private int[] lengths = new int[256];
+  private int[] hashes = new int[256];
+  private long[] counts = new long[256];
+  private int words;
+  // Word hash << 32 | word id + 1, 0 when free
+  private long[] slots = new long[512];
+
+  // Bigram key at 2 * slot, its count at 2 * slot + 1
+  private long[] pairTable = newPairTable(512);
+  private int pairs;
+
+  // Ids of the first and last word of this piece of text, -1 while empty
+  private int first = -1;
+  private int last = -1;
+
+  @Override
+  public void accept(byte[] word, int length) {
+    int id = intern(word, 0, length, WordFrequencies.hash(word, 0, length));
+    counts[id]++;
+    if (last >= 0) {
+      addPair(last, id, 1);
+    } else {
+      first = id;
+    }
+    last = id;
+  }
+
+  @Override
+  public void merge(ExactWordFrequencies following) {
+    int[] ids = new int[following.words];
+    for (int id = 0; id < following.words; id++) {
+      ids[id] = intern(following.pool, following.offsets[id], following.lengths[id], following.hashes[id]);
+      counts[ids[id]] += following.counts[id];
+    }
+    long[] table = following.pairTable;
+    for (int i = 0; i < table.length; i += 2) {
+      long key = table[i];
+      if (key != NO_PAIR) {
+        addPair(ids[(int) (key >>> 32)], ids[(int) key], table[i + 1]);
+      }
+    }
+    if (following.first < 0) {
+      return;
+    }
+    if (last >= 0) {
+      addPair(last, ids[following.first], 1);
+    } else {
+      first = ids[following.first];
+    }
+    last = ids[following.last];
+  }
+
+  public int getDistinctWords() {
+    return words;
+  }
+
+  public long getCount(String word) {
+    byte[] bytes = word.getBytes(UTF_8);
+    int h = WordFrequencies.hash(bytes, 0, bytes.length);
+    int mask = slots.length - 1;
+    for (int s = h & mask; slots[s] != 0; s = (s + 1) & mask) {
+      int id = (int) slots[s] - 1;
+      if ((int) (slots[s] >>> 32) == h && matches(id, bytes, 0, bytes.length)) {
+        return counts[id];
+      }
+    }
+    return 0;
+  }
+
+  @Override
+  public List<Map.Entry<String, Long>> topWords(int k) {
+    int[] ids = top(k, words, id -> counts[id]);
+    List<Map.Entry<String, Long>> top = new ArrayList<>(ids.length);
+    for (int id : ids) {
+      top.add(new SimpleImmutableEntry<>(word(id), counts[id]));
+    }
+    return top;
+  }
+
+  @Override
+  public List<Map.Entry<String, Long>> topBigrams(int k) {
+    int[] best = top(k, pairTable.length / 2, s -> pairTable[2 * s] == NO_PAIR ? -1 : pairTable[2 * s + 1]);
+    List<Map.Entry<String, Long>> top = new ArrayList<>(best.length);
+    for (int s : best) {
+      long key = pairTable[2 * s];
+      top.add(new SimpleImmutableEntry<>(word((int) (key >>> 32)) + " " + word((int) key), pairTable[2 * s + 1]));
+    }
+    return top;
+  }
+
+  // Indexes in [0, n) of the k largest non-negative counts, largest first
+  private static int[] top(int k, int n, IntToLongFunction count) {
+    PriorityQueue<Integer> heap = new PriorityQueue<>(
+        (a, b) -> Long.compare(count.applyAsLong(a), count.applyAsLong(b)));
+    for (int i = 0; i < n; i++) {
+      long c = count.applyAsLong(i);
+      if (c < 0) {
+        continue;
+      }
+      if (heap.size() < k) {
+        heap.add(i);
+      } else if (k > 0 && c > count.applyAsLong(heap.peek())) {
+        heap.poll();
+        heap.add(i);
+      }
+    }
+    List<Integer> sorted = new ArrayList<>(heap);
+    sorted.sort(Collections.reverseOrder(heap.comparator()));
+    return sorted.stream().mapToInt(Integer::intValue).toArray();
+  }
+
+  private String word(int id) {
+    return new String(pool, offsets[id], lengths[id], UTF_8);
+  }
+
+  private int intern(byte[] bytes, int offset, int length, int h) {
+    int mask = slots.length - 1;
+    int s = h & mask;
+    for (; slots[s] != 0; s = (s + 1) & mask) {
+      int id = (int) slots[s] - 1;
+      if ((int) (slots[s] >>> 32) == h && matches(id, bytes, offset, length)) {
+        return id;
+      }
+    }
+    int id = add(bytes, offset, length, h);
+    slots[s] = slot(h, id);
+    if (words * 2 > slots.length) {
+      rehashWords();
+    }
+    return id;
+  }
+
+  private boolean matches(int id, byte[] bytes, int offset, int length) {
+    if (lengths[id] != length) {
+      return false;
+    }
+    int start = offsets[id];
+    for (int i = 0; i < length; i++) {
+      if (pool[start + i] != bytes[offset + i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private int add(byte[] bytes, int offset, int length, int h) {
+    if (poolSize + length > pool.length) {
+      pool = Arrays.copyOf(pool, Math.max(pool.length * 2, poolSize + length));
+    }
+    System.arraycopy(bytes, offset, pool, poolSize, length);
+    if (words == offsets.length) {
+      int capacity = words * 2;
+      offsets = Arrays.copyOf(offsets, capacity);
+      lengths = Arrays.copyOf(lengths, capacity);
+      hashes = Arrays.copyOf(hashes, capacity);
+      counts = Arrays.copyOf(counts, capacity);
+    }
+    offsets[words] = poolSize;
+    lengths[words] = length;
+    hashes[words] = h;
+    poolSize += length;
+    return words++;
+  }
+
+  private void rehashWords() {
+    slots = new long[slots.length * 2];
+    int mask = slots.length - 1;
+    for (int id = 0; id < words; id++) {
+      int s = hashes[id] & mask;
+      while (slots[s] != 0) {
+        s = (s + 1) & mask;
+      }
+      slots[s] = slot(hashes[id], id);
+    }
+  }
+
+  private static long slot(int h, int id) {
+    return (long) h << 32 | (id + 1);
+  }
+
+  private void addPair(int firstId, int secondId, long count) {
+    long key = (long) firstId << 32 | secondId;
+    int mask = pairTable.length / 2 - 1;
+    int s = pairSlot(key, mask);
+    for (; pairTable[2 * s] != NO_PAIR; s = (s + 1) & mask) {
+      if (pairTable[2 * s] == key) {
+        pairTable[2 * s + 1] += count;
+        return;
+      }
+    }
+    pairTable[2 * s] = key;
+    pairTable[2 * s + 1] = count;
+    if (++pairs * 4 > pairTable.length) {
+      rehashPairs();
+    }
+  }
+
+  private void rehashPairs() {
+    long[] old = pairTable;
+    pairTable = newPairTable(old.length);
+    int mask = pairTable.length / 2 - 1;
+    for (int i = 0; i < old.length; i += 2) {
+      if (old[i] != NO_PAIR) {
+        int s = pairSlot(old[i], mask);
+        while (pairTable[2 * s] != NO_PAIR) {
+          s = (s + 1) & mask;
+        }
+        pairTable[2 * s] = old[i];
+        pairTable[2 * s + 1] = old[i + 1];
+      }
+    }
+  }
+
+  private static int pairSlot(long key, int mask) {
+    long h = key * 0x9E3779B97F4A7C15L;
+    return (int) (h >>> 32) & mask;
+  }
+
+  private static long[] newPairTable(int slots) {
+    long[] table = new long[2 * slots];
+    for (int i = 0; i < table.length; i += 2) {
+      table[i] = NO_PAIR;
+    }
+    return table;
+  }
+
+}
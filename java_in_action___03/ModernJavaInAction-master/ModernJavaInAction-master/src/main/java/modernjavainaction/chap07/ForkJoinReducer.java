@@ -0,0 +1,236 @@
+package modernjavainaction.chap07;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.DoubleBinaryOperator;
+import java.util.function.IntBinaryOperator;
+import java.util.function.IntUnaryOperator;
+import java.util.function.LongBinaryOperator;
+import java.util.function.LongToDoubleFunction;
+import java.util.function.LongUnaryOperator;
+
+// Fork/join reduction of primitive arrays and index ranges with any
+// associative operator. Unlike ForkJoinSumCalculator there is no fixed
+// threshold: a task keeps forking off its right half only while its worker has
+// at most a few more queued tasks than other workers could steal
+// (getSurplusQueuedTaskCount), so leaves are as large as the load allows. The
+// results travel in primitive fields of RecursiveActions, never boxed, and
+// forked halves that nobody stole are reclaimed with tryUnfork and reduced in
+// place. Ranges reduce mapper(i) for every index i directly, with no array.
+//
+// Results are combined left to right, so the operator has to be associative
+// but need not be commutative; identity must be its identity element, as for
+// Stream.reduce.
+public class ForkJoinReducer {
+
+  // Never split below this many elements, however idle the other workers are
+  private static final int MIN_GRAIN = 1 << 10;
+  private static final int SURPLUS = 3;
+
+  private ForkJoinReducer() {
+  }
+
+  public static long reduce(long[] numbers, long identity, LongBinaryOperator op) {
+    return reduceRange(0, numbers.length, i -> numbers[(int) i], identity, op);
+  }
+
+  public static long reduceRange(long from, long to, LongUnaryOperator mapper, long identity,
+      LongBinaryOperator op) {
+    LongReducer task = new LongReducer(from, to, mapper, identity, op, null);
+    run(task);
+    return task.result;
+  }
+
+  public static int reduce(int[] numbers, int identity, IntBinaryOperator op) {
+    return reduceIntRange(0, numbers.length, i -> numbers[i], identity, op);
+  }
+
+  public static int reduceIntRange(int from, int to, IntUnaryOperator mapper, int identity, IntBinaryOperator op) {
+    IntReducer task = new IntReducer(from, to, mapper, identity, op, null);
+    run(task);
+    return task.result;
+  }
+
+  public static double reduce(double[] numbers, double identity, DoubleBinaryOperator op) {
+    return reduceDoubleRange(0, numbers.length, i -> numbers[(int) i], identity, op);
+  }
+
+  public static double reduceDoubleRange(long from, long to, LongToDoubleFunction mapper, double identity,
+      DoubleBinaryOperator op) {
+    DoubleReducer task = new DoubleReducer(from, to, mapper, identity, op, null);
+    run(task);
+    return task.result;
+  }
+
+  // Outside a pool there is no work queue to measure the surplus of, so hand the root to the common pool
+  private static void run(RecursiveAction task) {
+    if (ForkJoinTask.inForkJoinPool()) {
+      task.invoke();
+    } else {
+      ForkJoinPool.commonPool().invoke(task);
+    }
+  }
+
+  private static boolean shouldSplit(long size) {
+    return size > MIN_GRAIN && RecursiveAction.getSurplusQueuedTaskCount() <= SURPLUS;
+  }
+
+  private static class LongReducer extends RecursiveAction {
+
+    private final long from;
+    private final long to;
+    private final LongUnaryOperator mapper;
+    private final long identity;
+    private final LongBinaryOperator op;
+    // The next right half forked by the same parent
+    private final LongReducer next;
+    private long result;
+
+    LongReducer(long from, long to, LongUnaryOperator mapper, long identity, LongBinaryOperator op,
+        LongReducer next) {
+      this.from = from;
+      this.to = to;
+      this.mapper = mapper;
+      this.identity = identity;
+      this.op = op;
+      this.next = next;
+    }
+
+    @Override
+    protected void compute() {
+      long hi = to;
+      LongReducer right = null;
+      while (shouldSplit(hi - from)) {
+        long mid = from + (hi - from) / 2;
+        right = new LongReducer(mid, hi, mapper, identity, op, right);
+        right.fork();
+        hi = mid;
+      }
+      long acc = leaf(from, hi);
+      // The most recently forked half is the one right after the leaf
+      for (; right != null; right = right.next) {
+        if (right.tryUnfork()) {
+          acc = op.applyAsLong(acc, right.leaf(right.from, right.to));
+        } else {
+          right.join();
+          acc = op.applyAsLong(acc, right.result);
+        }
+      }
+      result = acc;
+    }
+
+    private long leaf(long lo, long hi) {
+      long acc = identity;
+      for (long i = lo; i < hi; i++) {
+        acc = op.applyAsLong(acc, mapper.applyAsLong(i));
+      }
+      return acc;
+    }
+
+  }
+
+  private static class IntReducer extends RecursiveAction {
+
+    private final int from;
+    private final int to;
+    private final IntUnaryOperator mapper;
+    private final int identity;
+    private final IntBinaryOperator op;
+    private final IntReducer next;
+    private int result;
+
+    IntReducer(int from, int to, IntUnaryOperator mapper, int identity, IntBinaryOperator op, IntReducer next) {
+      this.from = from;
+      this.to = to;
+      this.mapper = mapper;
+      this.identity = identity;
+      this.op = op;
+      this.next = next;
+    }
+
+    @Override
+    protected void compute() {
+      int hi = to;
+      IntReducer right = null;
+      while (shouldSplit((long) hi - from)) {
+        int mid = (int) (from + ((long) hi - from) / 2);
+        right = new IntReducer(mid, hi, mapper, identity, op, right);
+        right.fork();
+        hi = mid;
+      }
+      int acc = leaf(from, hi);
+      for (; right != null; right = right.next) {
+        if (right.tryUnfork()) {
+          acc = op.applyAsInt(acc, right.leaf(right.from, right.to));
+        } else {
+          right.join();
+          acc = op.applyAsInt(acc, right.result);
+        }
+      }
+      result = acc;
+    }
+
+    private int leaf(int lo, int hi) {
+      int acc = identity;
+      for (int i = lo; i < hi; i++) {
+        acc = op.applyAsInt(acc, mapper.applyAsInt(i));
+      }
+      return acc;
+    }
+
+  }
+
+  private static class DoubleReducer extends RecursiveAction {
+
+    private final long from;
+    private final long to;
+    private final LongToDoubleFunction mapper;
+    private final double identity;
+    private final DoubleBinaryOperator op;
+    private final DoubleReducer next;
+    private double result;
+
+    DoubleReducer(long from, long to, LongToDoubleFunction mapper, double identity, DoubleBinaryOperator op,
+        DoubleReducer next) {
+      this.from = from;
+      this.to = to;
+      this.mapper = mapper;
+      this.identity = identity;
+      this.op = op;
+      this.next = next;
+    }
+
+    @Override
+    protected void compute() {
+      long hi = to;
+      DoubleReducer right = null;
+      while (shouldSplit(hi - from)) {
+        long mid = from + (hi - from) / 2;
+        right = new DoubleReducer(mid, hi, mapper, identity, op, right);
+        right.fork();
+        hi = mid;
+      }
+      double acc = leaf(from, hi);
+      for (; right != null; right = right.next) {
+        if (right.tryUnfork()) {
+          acc = op.applyAsDouble(acc, right.leaf(right.from, right.to));
+        } else {
+          right.join();
+          acc = op.applyAsDouble(acc, right.result);
+        }
+      }
+      result = acc;
+    }
+
+    private double leaf(long lo, long hi) {
+      double acc = identity;
+      for (long i = lo; i < hi; i++) {
+        acc = op.applyAsDouble(acc, mapper.applyAsDouble(i));
+      }
+      return acc;
+    }
+
+  }
+
+}
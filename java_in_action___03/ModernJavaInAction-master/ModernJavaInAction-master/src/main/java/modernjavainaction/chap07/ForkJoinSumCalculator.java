@@ -4,6 +4,7 @@ import static modernjavainaction.chap07.ParallelStreamsHarness.FORK_JOIN_POOL;
 
 import java.util.concurrent.ForkJoinTask;
 import java.util.concurrent.RecursiveTask;
+import java.util.function.LongUnaryOperator;
 import java.util.stream.LongStream;
 
 public class ForkJoinSumCalculator extends RecursiveTask<Long> {
@@ -52,4 +53,19 @@ public class ForkJoinSumCalculator extends RecursiveTask<Long> {
     return FORK_JOIN_POOL.invoke(task);
   }
 
+  // The same sum with ForkJoinReducer: adaptive leaves, no boxing and no array.
+  // Called from outside a pool, it runs in FORK_JOIN_POOL like forkJoinSum
+  // rather than in the common pool, so the two timings in
+  // ParallelStreamsHarness are comparable; inside a pool it stays there
+  public static long forkJoinRangeSum(long n) {
+    if (ForkJoinTask.inForkJoinPool()) {
+      return rangeSum(n);
+    }
+    return FORK_JOIN_POOL.invoke(ForkJoinTask.adapt(() -> rangeSum(n)));
+  }
+
+  private static long rangeSum(long n) {
+    return ForkJoinReducer.reduceRange(1, n + 1, LongUnaryOperator.identity(), 0L, Long::sum);
+  }
+
 }
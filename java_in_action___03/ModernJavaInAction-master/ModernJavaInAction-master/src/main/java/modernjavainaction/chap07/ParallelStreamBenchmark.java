@@ -1,9 +1,24 @@
 package modernjavainaction.chap07;
 
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.stream.Collectors.partitioningBy;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
 import java.util.stream.LongStream;
-import java.util.stream.Stream;
 
+import modernjavainaction.chap06.PartitionPrimeNumbers;
 import org.openjdk.jmh.annotations.Benchmark;
 import org.openjdk.jmh.annotations.BenchmarkMode;
 import org.openjdk.jmh.annotations.Fork;
@@ -11,53 +26,248 @@ import org.openjdk.jmh.annotations.Level;
 import org.openjdk.jmh.annotations.Measurement;
 import org.openjdk.jmh.annotations.Mode;
 import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
 import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
 import org.openjdk.jmh.annotations.State;
 import org.openjdk.jmh.annotations.TearDown;
 import org.openjdk.jmh.annotations.Warmup;
 
-@State(Scope.Thread)
+// Sequential and parallel versions of the chapter's examples side by side:
+// sums over several sources, the fork/join sums, the side-effect sum, word
+// counting and the prime partitioning collectors. Every parallel version runs
+// inside a ForkJoinPool of the given parallelism, which parallel streams and
+// the fork/join tasks here use when called from one of its workers.
+//
+// Each benchmark only varies on the parameters of the states it takes, so the
+// sequential baselines are not repeated per parallelism. The heap is left to
+// the JVM and nothing forces a GC between invocations: allocation and
+// collection are part of the cost being compared. ParallelStreamReport runs
+// this class and compares every parallel result to its baseline.
 @BenchmarkMode(Mode.AverageTime)
 @OutputTimeUnit(TimeUnit.MILLISECONDS)
-@Fork(value = 2, jvmArgs = { "-Xms4G", "-Xmx4G" })
-@Measurement(iterations = 2)
+@Fork(2)
+@Measurement(iterations = 5)
 @Warmup(iterations = 3)
 public class ParallelStreamBenchmark {
 
-  private static final long N = 10_000_000L;
+  @State(Scope.Benchmark)
+  public static class Pool {
+
+    @Param({ "1", "2", "4", "8" })
+    public int parallelism;
+
+    private ForkJoinPool pool;
+
+    @Setup(Level.Trial)
+    public void setup() {
+      pool = new ForkJoinPool(parallelism);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+      pool.shutdown();
+    }
+
+    <T> T run(Callable<T> task) {
+      return pool.submit(task).join();
+    }
+
+  }
+
+  @State(Scope.Benchmark)
+  public static class Range {
+
+    @Param({ "1000000", "10000000" })
+    public long n;
+
+    private long[] numbers;
+
+    @Setup(Level.Trial)
+    public void setup() {
+      numbers = LongStream.rangeClosed(1, n).toArray();
+    }
+
+  }
+
+  // The numbers 1 to n from Stream.iterate, a range or an array
+  @State(Scope.Benchmark)
+  public static class Numbers {
+
+    @Param({ "1000000", "10000000" })
+    public long n;
+
+    @Param({ "iterate", "range", "array" })
+    public String source;
+
+    private long[] numbers;
+
+    @Setup(Level.Trial)
+    public void setup() {
+      if (source.equals("array")) {
+        numbers = LongStream.rangeClosed(1, n).toArray();
+      }
+    }
+
+    LongStream stream() {
+      switch (source) {
+        case "iterate":
+          return LongStream.iterate(1L, i -> i + 1).limit(n);
+        case "range":
+          return LongStream.rangeClosed(1, n);
+        case "array":
+          return Arrays.stream(numbers);
+        default:
+          throw new IllegalArgumentException("Unknown source: " + source);
+      }
+    }
+
+  }
+
+  // Random words with a skewed frequency, as a String, in a heap or a direct
+  // ByteBuffer, or in a file mapped on every invocation
+  @State(Scope.Benchmark)
+  public static class Text {
+
+    private static final int VOCABULARY = 10_000;
+
+    @Param({ "1000000" })
+    public int words;
+
+    @Param({ "string", "heap", "direct", "mapped" })
+    public String source;
+
+    private String string;
+    private ByteBuffer buffer;
+    private Path file;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+      Random random = new Random(42);
+      StringBuilder text = new StringBuilder(words * 6);
+      for (int i = 0; i < words; i++) {
+        // Log-uniform ranks: a few words are very common, most are rare
+        text.append('w').append((int) Math.pow(VOCABULARY, random.nextDouble()));
+        text.append(i % 12 == 11 ? '\n' : ' ');
+      }
+      string = text.toString();
+      byte[] bytes = string.getBytes(UTF_8);
+      switch (source) {
+        case "string":
+          break;
+        case "heap":
+          buffer = ByteBuffer.wrap(bytes);
+          break;
+        case "direct":
+          buffer = ByteBuffer.allocateDirect(bytes.length).put(bytes).flip();
+          break;
+        case "mapped":
+          file = Files.createTempFile("words", ".txt");
+          Files.write(file, bytes);
+          break;
+        default:
+          throw new IllegalArgumentException("Unknown source: " + source);
+      }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+      if (file != null) {
+        Files.delete(file);
+      }
+    }
+
+    Utf8TextSpliterator spliterator() {
+      try {
+        return file != null ? Utf8TextSpliterator.map(file) : Utf8TextSpliterator.of(buffer);
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+
+  }
+
+  @State(Scope.Benchmark)
+  public static class Primes {
+
+    @Param({ "10000", "100000" })
+    public int limit;
+
+  }
 
   @Benchmark
-  public long iterativeSum() {
+  public long iterativeSum(Range range) {
     long result = 0;
-    for (long i = 1L; i <= N; i++) {
+    for (long i = 1L; i <= range.n; i++) {
       result += i;
     }
     return result;
   }
 
   @Benchmark
-  public long sequentialSum() {
-    return Stream.iterate(1L, i -> i + 1).limit(N).reduce(0L, Long::sum);
+  public long sequentialSum(Numbers numbers) {
+    return numbers.stream().reduce(0L, Long::sum);
+  }
+
+  @Benchmark
+  public long parallelSum(Numbers numbers, Pool pool) {
+    return pool.run(() -> numbers.stream().parallel().reduce(0L, Long::sum));
   }
 
+  // The array is built once per trial, so only the fork/join sum is measured
   @Benchmark
-  public long parallelSum() {
-    return Stream.iterate(1L, i -> i + 1).limit(N).parallel().reduce(0L, Long::sum);
+  public long forkJoinSum(Range range, Pool pool) {
+    return pool.run(() -> new ForkJoinSumCalculator(range.numbers).invoke());
   }
 
   @Benchmark
-  public long rangedSum() {
-    return LongStream.rangeClosed(1, N).reduce(0L, Long::sum);
+  public long forkJoinRangeSum(Range range, Pool pool) {
+    return pool.run(() -> ForkJoinSumCalculator.forkJoinRangeSum(range.n));
   }
 
   @Benchmark
-  public long parallelRangedSum() {
-    return LongStream.rangeClosed(1, N).parallel().reduce(0L, Long::sum);
+  public long sideEffectSum(Range range) {
+    return ParallelStreams.sideEffectSum(range.n);
   }
 
-  @TearDown(Level.Invocation)
-  public void tearDown() {
-    System.gc();
+  // Racy, so the result is wrong: measured to show what the race buys
+  @Benchmark
+  public long sideEffectParallelSum(Range range, Pool pool) {
+    return pool.run(() -> ParallelStreams.sideEffectParallelSum(range.n));
+  }
+
+  @Benchmark
+  public long wordCountSequential(Text text) {
+    if (text.source.equals("string")) {
+      return WordCount.countWordsIteratively(text.string);
+    }
+    return text.spliterator().countWords();
+  }
+
+  @Benchmark
+  public long wordCount(Text text, Pool pool) {
+    if (text.source.equals("string")) {
+      return pool.run(() -> WordCount.countWords(text.string));
+    }
+    return pool.run(() -> WordCount.countWords(text.spliterator()));
+  }
+
+  @Benchmark
+  public Map<Boolean, List<Integer>> partitionPrimes(Primes primes) {
+    return PartitionPrimeNumbers.partitionPrimes(primes.limit);
+  }
+
+  @Benchmark
+  public Map<Boolean, List<Integer>> partitionPrimesParallel(Primes primes, Pool pool) {
+    return pool.run(() -> IntStream.rangeClosed(2, primes.limit).parallel().boxed()
+        .collect(partitioningBy(PartitionPrimeNumbers::isPrime)));
+  }
+
+  // Sequential only: each candidate is tested against the primes accumulated so
+  // far, which a parallel split would not have seen
+  @Benchmark
+  public Map<Boolean, List<Integer>> partitionPrimesWithCustomCollector(Primes primes) {
+    return PartitionPrimeNumbers.partitionPrimesWithCustomCollector(primes.limit);
   }
 
 }
@@ -0,0 +1,108 @@
+package modernjavainaction.chap07;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+import org.openjdk.jmh.infra.BenchmarkParams;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+// Runs ParallelStreamBenchmark and writes its results as JSON, then a report
+// comparing every parallel benchmark to its sequential baseline with the same
+// parameters: the speedup (baseline time / parallel time) at each parallelism.
+// Both files are named after the start of the run. Arguments are passed to JMH,
+// e.g. -p n=1000000 -p parallelism=1,4 -f 1.
+public class ParallelStreamReport {
+
+  // Parallel benchmark -> the sequential benchmark it should beat
+  private static final Map<String, String> BASELINES = Map.of(
+      "parallelSum", "sequentialSum",
+      "forkJoinSum", "iterativeSum",
+      "forkJoinRangeSum", "iterativeSum",
+      "sideEffectParallelSum", "sideEffectSum",
+      "wordCount", "wordCountSequential",
+      "partitionPrimesParallel", "partitionPrimes");
+
+  public static void main(String[] args) throws Exception {
+    String run = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss"));
+    Path json = Paths.get("parallel-streams-" + run + ".json");
+    Path report = Paths.get("parallel-streams-" + run + ".txt");
+    Options options = new OptionsBuilder()
+        .parent(new CommandLineOptions(args))
+        .include(ParallelStreamBenchmark.class.getName() + "\\.")
+        .resultFormat(ResultFormatType.JSON)
+        .result(json.toString())
+        .build();
+    Collection<RunResult> results = new Runner(options).run();
+    List<String> lines = compare(results);
+    lines.forEach(System.out::println);
+    Files.write(report, lines);
+    System.out.println("Results in " + json + ", report in " + report);
+  }
+
+  static List<String> compare(Collection<RunResult> results) {
+    Map<String, RunResult> byKey = new HashMap<>();
+    for (RunResult result : results) {
+      byKey.put(key(method(result.getParams()), result.getParams()), result);
+    }
+    List<String> lines = new ArrayList<>();
+    lines.add(String.format("%-24s %-40s %16s %16s %8s", "Benchmark", "Params", "Time", "Baseline", "Speedup"));
+    for (RunResult result : results) {
+      BenchmarkParams params = result.getParams();
+      String baseline = BASELINES.get(method(params));
+      if (baseline == null) {
+        continue;
+      }
+      RunResult sequential = byKey.get(key(baseline, params));
+      double score = result.getPrimaryResult().getScore();
+      String time = String.format("%.3f %s", score, result.getPrimaryResult().getScoreUnit());
+      if (sequential == null) {
+        lines.add(String.format("%-24s %-40s %16s %16s %8s", method(params), describe(params), time, "missing", "-"));
+        continue;
+      }
+      double base = sequential.getPrimaryResult().getScore();
+      String baseTime = String.format("%.3f %s", base, sequential.getPrimaryResult().getScoreUnit());
+      lines.add(String.format("%-24s %-40s %16s %16s %7.2fx", method(params), describe(params), time, baseTime,
+          base / score));
+    }
+    return lines;
+  }
+
+  private static String method(BenchmarkParams params) {
+    String benchmark = params.getBenchmark();
+    return benchmark.substring(benchmark.lastIndexOf('.') + 1);
+  }
+
+  // A benchmark with its parameters other than parallelism, which baselines do not have
+  private static String key(String method, BenchmarkParams params) {
+    StringBuilder key = new StringBuilder(method);
+    for (String name : new TreeSet<>(params.getParamsKeys())) {
+      if (!name.equals("parallelism")) {
+        key.append(' ').append(name).append('=').append(params.getParam(name));
+      }
+    }
+    return key.toString();
+  }
+
+  private static String describe(BenchmarkParams params) {
+    StringBuilder description = new StringBuilder();
+    for (String name : new TreeSet<>(params.getParamsKeys())) {
+      description.append(description.length() == 0 ? "" : " ").append(name).append('=').append(params.getParam(name));
+    }
+    return description.toString();
+  }
+
+}
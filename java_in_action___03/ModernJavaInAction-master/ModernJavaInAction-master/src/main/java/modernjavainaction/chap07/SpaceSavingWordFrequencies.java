@@ -0,0 +1,256 @@
+package modernjavainaction.chap07;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+// Approximate word and bigram counts in bounded memory, with the Space-Saving
+// algorithm: each of the two summaries keeps at most capacity counters, and a
+// key without a counter takes over the smallest one, inheriting its count as
+// possible overestimation. Reported counts are upper bounds, too high by
+// roughly (words counted) / capacity at most, and every key more frequent than
+// that is reported.
+//
+// Merging offers every counter of the following summary as a weighted update
+// and raises the counters it did not touch by the following summary's minimum,
+// which keeps every reported count an upper bound.
+public class SpaceSavingWordFrequencies implements WordFrequencies<SpaceSavingWordFrequencies> {
+
+  private final Summary words;
+  private final Summary bigrams;
+  private byte[] bigram = new byte[128];
+  // The first and last word of this piece of text, null while empty
+  private byte[] first;
+  private byte[] last;
+  private int lastLength;
+
+  public SpaceSavingWordFrequencies(int capacity) {
+    if (capacity <= 0) {
+      throw new IllegalArgumentException("capacity must be positive: " + capacity);
+    }
+    words = new Summary(capacity);
+    bigrams = new Summary(capacity);
+  }
+
+  @Override
+  public void accept(byte[] word, int length) {
+    words.offer(word, length, 1, 0);
+    if (last != null) {
+      offerBigram(last, lastLength, word, length, 1);
+    } else {
+      first = Arrays.copyOf(word, length);
+    }
+    if (last == null || last.length < length) {
+      last = new byte[Math.max(length, 32)];
+    }
+    System.arraycopy(word, 0, last, 0, length);
+    lastLength = length;
+  }
+
+  @Override
+  public void merge(SpaceSavingWordFrequencies following) {
+    words.merge(following.words);
+    bigrams.merge(following.bigrams);
+    if (following.first == null) {
+      return;
+    }
+    if (last != null) {
+      offerBigram(last, lastLength, following.first, following.first.length, 1);
+    } else {
+      first = following.first;
+    }
+    last = following.last;
+    lastLength = following.lastLength;
+  }
+
+  private void offerBigram(byte[] a, int aLength, byte[] b, int bLength, long count) {
+    int length = aLength + 1 + bLength;
+    if (length > bigram.length) {
+      bigram = new byte[Math.max(bigram.length * 2, length)];
+    }
+    System.arraycopy(a, 0, bigram, 0, aLength);
+    bigram[aLength] = ' ';
+    System.arraycopy(b, 0, bigram, aLength + 1, bLength);
+    bigrams.offer(bigram, length, count, 0);
+  }
+
+  @Override
+  public List<Map.Entry<String, Long>> topWords(int k) {
+    return words.top(k);
+  }
+
+  @Override
+  public List<Map.Entry<String, Long>> topBigrams(int k) {
+    return bigrams.top(k);
+  }
+
+  // Counters in arrays indexed by counter number, found through an
+  // open-addressing table and ordered by count in an indexed min-heap
+  private static class Summary {
+
+    private final int capacity;
+    private final byte[][] keys;
+    private final int[] hashes;
+    private final long[] counts;
+    private final long[] errors;
+    private int size;
+    // Counter + 1 by hash, 0 when free
+    private final int[] slots;
+    private final int[] heap;
+    private final int[] heapIndex;
+
+    Summary(int capacity) {
+      this.capacity = capacity;
+      keys = new byte[capacity][];
+      hashes = new int[capacity];
+      counts = new long[capacity];
+      errors = new long[capacity];
+      slots = new int[Integer.highestOneBit(capacity * 2 - 1) * 2];
+      heap = new int[capacity];
+      heapIndex = new int[capacity];
+    }
+
+    void offer(byte[] key, int length, long count, long error) {
+      int h = WordFrequencies.hash(key, 0, length);
+      int c = find(key, length, h);
+      if (c < 0) {
+        if (size < capacity) {
+          c = size++;
+          heap[c] = c;
+          heapIndex[c] = c;
+        } else {
+          c = heap[0];
+          removeSlot(c);
+          error += counts[c];
+          count += counts[c];
+          counts[c] = 0;
+          errors[c] = 0;
+        }
+        keys[c] = Arrays.copyOf(key, length);
+        hashes[c] = h;
+        insertSlot(c);
+        siftUp(heapIndex[c]);
+      }
+      counts[c] += count;
+      errors[c] += error;
+      siftDown(heapIndex[c]);
+    }
+
+    void merge(Summary following) {
+      long followingMin = following.size == following.capacity ? following.counts[following.heap[0]] : 0;
+      boolean[] touched = new boolean[capacity];
+      Integer[] order = new Integer[following.size];
+      for (int i = 0; i < order.length; i++) {
+        order[i] = i;
+      }
+      // Largest first, so the heavy counters are not the ones evicted by later offers
+      Arrays.sort(order, (a, b) -> Long.compare(following.counts[b], following.counts[a]));
+      for (int c : order) {
+        byte[] key = following.keys[c];
+        offer(key, key.length, following.counts[c], following.errors[c]);
+        touched[find(key, key.length, WordFrequencies.hash(key, 0, key.length))] = true;
+      }
+      if (followingMin > 0) {
+        for (int c = 0; c < size; c++) {
+          if (!touched[c]) {
+            counts[c] += followingMin;
+            errors[c] += followingMin;
+          }
+        }
+        for (int i = size / 2 - 1; i >= 0; i--) {
+          siftDown(i);
+        }
+      }
+    }
+
+    List<Map.Entry<String, Long>> top(int k) {
+      Integer[] order = new Integer[size];
+      for (int i = 0; i < size; i++) {
+        order[i] = i;
+      }
+      Arrays.sort(order, (a, b) -> Long.compare(counts[b], counts[a]));
+      List<Map.Entry<String, Long>> top = new ArrayList<>(Math.min(k, size));
+      for (int i = 0; i < Math.min(k, size); i++) {
+        int c = order[i];
+        top.add(new SimpleImmutableEntry<>(new String(keys[c], UTF_8), counts[c]));
+      }
+      return top;
+    }
+
+    private int find(byte[] key, int length, int h) {
+      int mask = slots.length - 1;
+      for (int s = h & mask; slots[s] != 0; s = (s + 1) & mask) {
+        int c = slots[s] - 1;
+        if (hashes[c] == h && keys[c].length == length && Arrays.equals(keys[c], 0, length, key, 0, length)) {
+          return c;
+        }
+      }
+      return -1;
+    }
+
+    private void insertSlot(int c) {
+      int mask = slots.length - 1;
+      int s = hashes[c] & mask;
+      while (slots[s] != 0) {
+        s = (s + 1) & mask;
+      }
+      slots[s] = c + 1;
+    }
+
+    // Linear-probing deletion: shift later entries of the probe run back into the hole
+    private void removeSlot(int c) {
+      int mask = slots.length - 1;
+      int hole = hashes[c] & mask;
+      while (slots[hole] != c + 1) {
+        hole = (hole + 1) & mask;
+      }
+      for (int s = (hole + 1) & mask; slots[s] != 0; s = (s + 1) & mask) {
+        int home = hashes[slots[s] - 1] & mask;
+        // Move the entry unless its home lies cyclically in (hole, s]
+        if (((s - home) & mask) >= ((s - hole) & mask)) {
+          slots[hole] = slots[s];
+          hole = s;
+        }
+      }
+      slots[hole] = 0;
+    }
+
+    private void siftUp(int i) {
+      int c = heap[i];
+      while (i > 0) {
+        int parent = (i - 1) >>> 1;
+        if (counts[heap[parent]] <= counts[c]) {
+          break;
+        }
+        place(heap[parent], i);
+        i = parent;
+      }
+      place(c, i);
+    }
+
+    private void siftDown(int i) {
+      int c = heap[i];
+      for (int child; (child = 2 * i + 1) < size; i = child) {
+        if (child + 1 < size && counts[heap[child + 1]] < counts[heap[child]]) {
+          child++;
+        }
+        if (counts[c] <= counts[heap[child]]) {
+          break;
+        }
+        place(heap[child], i);
+      }
+      place(c, i);
+    }
+
+    private void place(int c, int i) {
+      heap[i] = c;
+      heapIndex[c] = i;
+    }
+
+  }
+
+}
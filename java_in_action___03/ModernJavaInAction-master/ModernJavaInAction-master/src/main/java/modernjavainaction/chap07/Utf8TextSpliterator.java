@@ -0,0 +1,284 @@
+package modernjavainaction.chap07;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.function.IntConsumer;
+
+// The bytes of UTF-8 text, memory-mapped or in a ByteBuffer, as a Spliterator
+// that only ever splits right before an ASCII whitespace byte. Such a byte can
+// never be part of a multi-byte UTF-8 sequence, so no character and no word is
+// ever cut in two, and word counts of the pieces simply add up.
+//
+// A file is mapped in segments of about 1GB, each ending right before a
+// whitespace byte if there is one shortly after the 1GB mark, and otherwise at
+// the nearest character boundary, in which case a word may run on into the next
+// segment. Counting carries the word state across segments, and a spliterator
+// over several segments splits only at boundaries that cannot be inside a word,
+// then within a segment. Whitespace means Character.isWhitespace, with the
+// multi-byte whitespace code points decoded from their UTF-8 sequences.
+public class Utf8TextSpliterator implements Spliterator.OfInt {
+
+  private static final int SEGMENT_SIZE = 1 << 30;
+  // How far past a segment boundary to look for whitespace to end the segment at
+  private static final int MAX_WORD_LENGTH = 1 << 16;
+  private static final boolean[] ASCII_WHITESPACE = new boolean[128];
+
+  static {
+    for (int c = 0; c < 128; c++) {
+      ASCII_WHITESPACE[c] = Character.isWhitespace(c);
+    }
+  }
+
+  private final ByteBuffer[] segments;
+  // joined[s]: segments[s] was cut at a character boundary, maybe inside a word
+  private final boolean[] joined;
+  private final int lastSegment;
+  // End of the part of segments[lastSegment] this spliterator covers
+  private final int end;
+  private int segment;
+  private int pos;
+
+  private Utf8TextSpliterator(ByteBuffer[] segments, boolean[] joined, int segment, int pos, int lastSegment,
+      int end) {
+    this.segments = segments;
+    this.joined = joined;
+    this.segment = segment;
+    this.pos = pos;
+    this.lastSegment = lastSegment;
+    this.end = end;
+  }
+
+  public static Utf8TextSpliterator of(ByteBuffer text) {
+    ByteBuffer slice = text.slice();
+    return new Utf8TextSpliterator(new ByteBuffer[] { slice }, new boolean[1], 0, 0, 0, slice.limit());
+  }
+
+  public static Utf8TextSpliterator map(Path file) throws IOException {
+    List<ByteBuffer> segments = new ArrayList<>();
+    List<Boolean> joined = new ArrayList<>();
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      long size = channel.size();
+      long start = 0;
+      while (start < size) {
+        long length = Math.min(size - start, (long) SEGMENT_SIZE + MAX_WORD_LENGTH);
+        ByteBuffer mapped = channel.map(MapMode.READ_ONLY, start, length);
+        int segmentEnd = (int) length;
+        boolean cutInWord = false;
+        if (start + length < size) {
+          segmentEnd = nextAsciiWhitespace(mapped, SEGMENT_SIZE, (int) length);
+          if (segmentEnd == length) {
+            // A long run without ASCII whitespace, such as base64: cut before
+            // the lead byte of the character at the 1GB mark
+            segmentEnd = SEGMENT_SIZE;
+            for (int i = 0; i < 3 && (mapped.get(segmentEnd) & 0xC0) == 0x80; i++) {
+              segmentEnd--;
+            }
+            cutInWord = true;
+          }
+        }
+        mapped.limit(segmentEnd);
+        segments.add(mapped.slice());
+        joined.add(cutInWord);
+        start += segmentEnd;
+      }
+    }
+    if (segments.isEmpty()) {
+      segments.add(ByteBuffer.allocate(0));
+      joined.add(false);
+    }
+    boolean[] cutInWord = new boolean[joined.size()];
+    for (int s = 0; s < cutInWord.length; s++) {
+      cutInWord[s] = joined.get(s);
+    }
+    int last = segments.size() - 1;
+    return new Utf8TextSpliterator(segments.toArray(new ByteBuffer[0]), cutInWord, 0, 0, last,
+        segments.get(last).limit());
+  }
+
+  private int limit(int s) {
+    return s == lastSegment ? end : segments[s].limit();
+  }
+
+  // Number of words in the rest of the text, consuming it
+  public long countWords() {
+    long count = 0;
+    boolean lastSpace = true;
+    for (; segment <= lastSegment; segment++, pos = 0) {
+      ByteBuffer text = segments[segment];
+      int limit = limit(segment);
+      int i = pos;
+      while (i < limit) {
+        int length = codePointAt(text, i, limit);
+        if (length > 0) {
+          lastSpace = true;
+          i += length;
+        } else {
+          if (lastSpace) {
+            count++;
+          }
+          lastSpace = false;
+          i -= length;
+        }
+      }
+    }
+    segment = lastSegment;
+    pos = end;
+    return count;
+  }
+
+  // Hands every word in the rest of the text to sink, in order, consuming it.
+  // The word is copied into an array that is reused for the next word.
+  public void forEachWord(WordSink sink) {
+    byte[] word = new byte[64];
+    int length = 0;
+    for (; segment <= lastSegment; segment++, pos = 0) {
+      ByteBuffer text = segments[segment];
+      int limit = limit(segment);
+      int i = pos;
+      while (i < limit) {
+        int n = codePointAt(text, i, limit);
+        if (n > 0) {
+          if (length > 0) {
+            sink.accept(word, length);
+            length = 0;
+          }
+          i += n;
+        } else {
+          if (length - n > word.length) {
+            word = Arrays.copyOf(word, Math.max(word.length * 2, length - n));
+          }
+          for (int next = i - n; i < next; i++) {
+            word[length++] = text.get(i);
+          }
+        }
+      }
+    }
+    if (length > 0) {
+      sink.accept(word, length);
+    }
+    segment = lastSegment;
+    pos = end;
+  }
+
+  public interface WordSink {
+
+    // The UTF-8 bytes of the next word are word[0, length)
+    void accept(byte[] word, int length);
+
+  }
+
+  // Length of the code point at i, positive if it is whitespace and negative
+  // otherwise. Malformed bytes count as one-byte non-whitespace characters.
+  static int codePointAt(ByteBuffer text, int i, int limit) {
+    byte b = text.get(i);
+    if (b >= 0) {
+      return ASCII_WHITESPACE[b] ? 1 : -1;
+    }
+    int length = (b & 0xE0) == 0xC0 ? 2 : (b & 0xF0) == 0xE0 ? 3 : (b & 0xF8) == 0xF0 ? 4 : 1;
+    if (i + length > limit) {
+      return -1;
+    }
+    // Every multi-byte whitespace code point is a three-byte sequence led by E1, E2 or E3
+    if (length == 3 && b >= (byte) 0xE1 && b <= (byte) 0xE3) {
+      int codePoint = (b & 0x0F) << 12 | (text.get(i + 1) & 0x3F) << 6 | (text.get(i + 2) & 0x3F);
+      if (Character.isWhitespace(codePoint)) {
+        return 3;
+      }
+    }
+    return -length;
+  }
+
+  private static int nextAsciiWhitespace(ByteBuffer text, int from, int limit) {
+    for (int i = from; i < limit; i++) {
+      byte b = text.get(i);
+      if (b >= 0 && ASCII_WHITESPACE[b]) {
+        return i;
+      }
+    }
+    return limit;
+  }
+
+  @Override
+  public boolean tryAdvance(IntConsumer action) {
+    while (pos == limit(segment) && segment < lastSegment) {
+      segment++;
+      pos = 0;
+    }
+    if (pos == limit(segment)) {
+      return false;
+    }
+    action.accept(segments[segment].get(pos++) & 0xFF);
+    return true;
+  }
+
+  @Override
+  public void forEachRemaining(IntConsumer action) {
+    for (; segment <= lastSegment; segment++, pos = 0) {
+      ByteBuffer text = segments[segment];
+      for (int i = pos, limit = limit(segment); i < limit; i++) {
+        action.accept(text.get(i) & 0xFF);
+      }
+    }
+    segment = lastSegment;
+    pos = end;
+  }
+
+  @Override
+  public Utf8TextSpliterator trySplit() {
+    if (segment < lastSegment) {
+      int mid = cleanBoundary(segment + (lastSegment - segment + 1) / 2);
+      if (mid > 0) {
+        Utf8TextSpliterator prefix =
+            new Utf8TextSpliterator(segments, joined, segment, pos, mid - 1, segments[mid - 1].limit());
+        segment = mid;
+        pos = 0;
+        return prefix;
+      }
+    }
+    int limit = limit(segment);
+    int split = nextAsciiWhitespace(segments[segment], pos + (limit - pos) / 2, limit);
+    if (split <= pos || split == limit) {
+      return null;
+    }
+    Utf8TextSpliterator prefix = new Utf8TextSpliterator(segments, joined, segment, pos, segment, split);
+    pos = split;
+    return prefix;
+  }
+
+  // The segment in (segment, lastSegment] nearest to mid whose predecessor
+  // ends outside a word, or 0 if every boundary may be inside one
+  private int cleanBoundary(int mid) {
+    for (int d = 0; mid - d > segment || mid + d <= lastSegment; d++) {
+      if (mid - d > segment && !joined[mid - d - 1]) {
+        return mid - d;
+      }
+      if (mid + d <= lastSegment && !joined[mid + d - 1]) {
+        return mid + d;
+      }
+    }
+    return 0;
+  }
+
+  @Override
+  public long estimateSize() {
+    long size = limit(segment) - pos;
+    for (int s = segment + 1; s <= lastSegment; s++) {
+      size += limit(s);
+    }
+    return size;
+  }
+
+  @Override
+  public int characteristics() {
+    return ORDERED + SIZED + SUBSIZED + NONNULL + IMMUTABLE;
+  }
+
+}
@@ -1,7 +1,14 @@
 package modernjavainaction.chap07;
 
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.Spliterator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
 import java.util.function.Consumer;
+import java.util.function.Supplier;
 import java.util.stream.Stream;
 import java.util.stream.StreamSupport;
 
@@ -12,9 +19,18 @@ public class WordCount {
       + "mi  ritrovai in una  selva oscura"
       + " che la  dritta via era   smarrita ";
 
-  public static void main(String[] args) {
+  public static void main(String[] args) throws IOException {
     System.out.println("Found " + countWordsIteratively(SENTENCE) + " words");
     System.out.println("Found " + countWords(SENTENCE) + " words");
+    for (String file : args) {
+      long start = System.nanoTime();
+      long words = countWords(Paths.get(file));
+      long duration = (System.nanoTime() - start) / 1_000_000;
+      System.out.println("Found " + words + " words in " + file + " in " + duration + " msecs");
+      ExactWordFrequencies frequencies = countFrequencies(Paths.get(file), ExactWordFrequencies::new);
+      System.out.println("Top words: " + frequencies.topWords(10));
+      System.out.println("Top bigrams: " + frequencies.topBigrams(10));
+    }
   }
 
   public static int countWordsIteratively(String s) {
@@ -48,6 +64,92 @@ public class WordCount {
     return wordCounter.getCounter();
   }
 
+  // Maps the file and counts its UTF-8 words in a fork/join reduction over
+  // whitespace-aligned pieces, each counted with a plain long
+  public static long countWords(Path file) throws IOException {
+    return countWords(Utf8TextSpliterator.map(file));
+  }
+
+  public static long countWords(Utf8TextSpliterator text) {
+    return invoke(new WordCountTask(text, leafSize(text.estimateSize())));
+  }
+
+  // Called from a task, stay in its pool, so callers can pick the parallelism
+  private static <T> T invoke(ForkJoinTask<T> task) {
+    return ForkJoinTask.inForkJoinPool() ? task.invoke() : ForkJoinPool.commonPool().invoke(task);
+  }
+
+  // Several pieces per worker, so a slow piece does not hold up the others
+  static long leafSize(long size) {
+    ForkJoinPool pool = ForkJoinTask.getPool();
+    int parallelism = pool != null ? pool.getParallelism() : ForkJoinPool.getCommonPoolParallelism();
+    return Math.max(size / (parallelism * 8L), 1 << 20);
+  }
+
+  private static class WordCountTask extends RecursiveTask<Long> {
+
+    private final Utf8TextSpliterator text;
+    private final long leafSize;
+
+    WordCountTask(Utf8TextSpliterator text, long leafSize) {
+      this.text = text;
+      this.leafSize = leafSize;
+    }
+
+    @Override
+    protected Long compute() {
+      Utf8TextSpliterator prefix;
+      if (text.estimateSize() > leafSize && (prefix = text.trySplit()) != null) {
+        WordCountTask left = new WordCountTask(prefix, leafSize);
+        left.fork();
+        long right = new WordCountTask(text, leafSize).compute();
+        return left.join() + right;
+      }
+      return text.countWords();
+    }
+
+  }
+
+  // Word and bigram frequencies of the file: every fork/join leaf fills its own
+  // table from tables, and tables are merged in text order as the tasks join.
+  // Pass ExactWordFrequencies::new for exact counts, or a
+  // SpaceSavingWordFrequencies supplier to bound memory on huge vocabularies.
+  public static <T extends WordFrequencies<T>> T countFrequencies(Path file, Supplier<T> tables)
+      throws IOException {
+    Utf8TextSpliterator text = Utf8TextSpliterator.map(file);
+    return invoke(new FrequencyTask<>(text, leafSize(text.estimateSize()), tables));
+  }
+
+  private static class FrequencyTask<T extends WordFrequencies<T>> extends RecursiveTask<T> {
+
+    private final Utf8TextSpliterator text;
+    private final long leafSize;
+    private final Supplier<T> tables;
+
+    FrequencyTask(Utf8TextSpliterator text, long leafSize, Supplier<T> tables) {
+      this.text = text;
+      this.leafSize = leafSize;
+      this.tables = tables;
+    }
+
+    @Override
+    protected T compute() {
+      Utf8TextSpliterator prefix;
+      if (text.estimateSize() > leafSize && (prefix = text.trySplit()) != null) {
+        FrequencyTask<T> left = new FrequencyTask<>(prefix, leafSize, tables);
+        left.fork();
+        T right = new FrequencyTask<>(text, leafSize, tables).compute();
+        T frequencies = left.join();
+        frequencies.merge(right);
+        return frequencies;
+      }
+      T frequencies = tables.get();
+      text.forEachWord(frequencies);
+      return frequencies;
+    }
+
+  }
+
   private static class WordCounter {
 
     private final int counter;
@@ -0,0 +1,32 @@
+package modernjavainaction.chap07;
+
+import java.util.List;
+import java.util.Map;
+
+// Word and bigram counts of one piece of text, fed its words in order. Pieces
+// counted on different threads are merged in text order, so the bigram made of
+// the last word of one piece and the first word of the next is not lost.
+public interface WordFrequencies<T extends WordFrequencies<T>> extends Utf8TextSpliterator.WordSink {
+
+  // Adds the counts of the text that immediately follows this one
+  void merge(T following);
+
+  // The k most frequent words, most frequent first
+  List<Map.Entry<String, Long>> topWords(int k);
+
+  // The k most frequent pairs of consecutive words, as "first second"
+  List<Map.Entry<String, Long>> topBigrams(int k);
+
+  static int hash(byte[] bytes, int offset, int length) {
+    int h = 0;
+    for (int i = offset; i < offset + length; i++) {
+      h = 31 * h + bytes[i];
+    }
+    // Spread the bits, since tables index with the low ones
+    h ^= h >>> 16;
+    h *= 0x85ebca6b;
+    h ^= h >>> 13;
+    return h;
+  }
+
+}
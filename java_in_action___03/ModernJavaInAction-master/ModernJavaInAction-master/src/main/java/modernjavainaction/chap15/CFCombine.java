@@ -6,12 +6,13 @@ import static modernjavainaction.chap15.Functions.g;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+
+import modernjavainaction.chap16.AdaptiveExecutor;
 
 public class CFCombine {
 
   public static void main(String[] args) throws ExecutionException, InterruptedException {
-      ExecutorService executorService = Executors.newFixedThreadPool(10);
+      ExecutorService executorService = new AdaptiveExecutor();
       int x = 1337;
 
       CompletableFuture<Integer> a = new CompletableFuture<>();
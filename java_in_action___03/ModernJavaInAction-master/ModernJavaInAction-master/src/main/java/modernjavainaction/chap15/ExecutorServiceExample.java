@@ -5,15 +5,16 @@ import static modernjavainaction.chap15.Functions.go;
 
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 
+import modernjavainaction.chap16.AdaptiveExecutor;
+
 public class ExecutorServiceExample {
 
   public static void main(String[] args) throws ExecutionException, InterruptedException {
     int x = 1337;
 
-    ExecutorService executorService = Executors.newFixedThreadPool(2);
+    ExecutorService executorService = new AdaptiveExecutor();
     Future<Integer> y = executorService.submit(() -> fo(x));
     Future<Integer> z = executorService.submit(() -> go(x));
     System.out.println(y.get() + z.get());
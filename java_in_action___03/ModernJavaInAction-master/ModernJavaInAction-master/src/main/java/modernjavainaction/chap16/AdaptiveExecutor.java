@@ -0,0 +1,210 @@
+package modernjavainaction.chap16;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+// A thread pool for CompletableFuture stages that sizes itself with
+// Nthreads = Ncpu * Ucpu * (1 + W/C). Every task is timed on the thread that
+// runs it: wall-clock time minus the thread's CPU time is what it spent
+// waiting (W), the CPU time is what it spent computing (C). Once per tuning
+// interval the ratio of the totals is folded into a moving average and the
+// pool is resized, so a pool of blocking shop calls grows towards hundreds of
+// threads while one running pure computations settles at the number of cores.
+//
+// Threads blocked waiting for a core also look like they are waiting, which
+// would make a CPU-bound pool keep growing; the pool therefore never grows
+// while the measured CPU use already reaches Ncpu * Ucpu. Idle threads above
+// the current size time out, and all threads are daemons.
+//
+// Thread CPU time measurement is a JVM-wide setting, so the pool never turns
+// it on: when it is unsupported or disabled, tasks run untimed and the pool
+// keeps the size given by the initial W/C guess.
+public class AdaptiveExecutor extends AbstractExecutorService {
+
+  public static final int DEFAULT_MAX_THREADS = 1024;
+  public static final Duration DEFAULT_TUNING_INTERVAL = Duration.ofMillis(200);
+
+  private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+  private static final AtomicInteger POOL_NUMBER = new AtomicInteger();
+  // Weight of the newest interval in the wait/compute moving average
+  private static final double SMOOTHING = 0.5;
+
+  private final int cpus = Runtime.getRuntime().availableProcessors();
+  private final double targetUtilization;
+  private final int maxThreads;
+  private final long tuningInterval;
+  private final boolean measured;
+  private final ThreadPoolExecutor pool;
+
+  private final LongAdder waitNanos = new LongAdder();
+  private final LongAdder computeNanos = new LongAdder();
+  private final AtomicBoolean tuning = new AtomicBoolean();
+  private volatile double waitComputeRatio;
+  private volatile long lastTuned = System.nanoTime();
+
+  // Sized for computation until the first tasks have been measured
+  public AdaptiveExecutor() {
+    this(1.0, 0.0, DEFAULT_MAX_THREADS, DEFAULT_TUNING_INTERVAL);
+  }
+
+  // targetUtilization is Ucpu, between 0 and 1; initialWaitComputeRatio is the
+  // W/C guess used until measurements arrive
+  public AdaptiveExecutor(double targetUtilization, double initialWaitComputeRatio, int maxThreads,
+      Duration tuningInterval) {
+    if (!(targetUtilization > 0 && targetUtilization <= 1)) {
+      throw new IllegalArgumentException("target utilization must be in (0, 1]: " + targetUtilization);
+    }
+    if (initialWaitComputeRatio < 0 || maxThreads <= 0) {
+      throw new IllegalArgumentException();
+    }
+    this.targetUtilization = targetUtilization;
+    this.maxThreads = maxThreads;
+    this.tuningInterval = tuningInterval.toNanos();
+    this.measured = THREADS.isCurrentThreadCpuTimeSupported() && THREADS.isThreadCpuTimeEnabled();
+    this.waitComputeRatio = initialWaitComputeRatio;
+    int size = threadsFor(initialWaitComputeRatio);
+    String prefix = "adaptive-" + POOL_NUMBER.incrementAndGet() + "-";
+    AtomicInteger threadNumber = new AtomicInteger();
+    this.pool = new ThreadPoolExecutor(size, size, 10, TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+        (Runnable r) -> {
+          Thread t = new Thread(r, prefix + threadNumber.incrementAndGet());
+          t.setDaemon(true);
+          return t;
+        });
+    pool.allowCoreThreadTimeOut(true);
+  }
+
+  // For stages that mostly block on remote calls, such as Shop.getPrice
+  public static AdaptiveExecutor forBlockingIO() {
+    return new AdaptiveExecutor(1.0, 50.0, DEFAULT_MAX_THREADS, DEFAULT_TUNING_INTERVAL);
+  }
+
+  @Override
+  public void execute(Runnable command) {
+    if (command == null) {
+      throw new NullPointerException();
+    }
+    pool.execute(measured ? () -> runMeasured(command) : command);
+  }
+
+  private void runMeasured(Runnable command) {
+    long cpuStart = THREADS.getCurrentThreadCpuTime();
+    long start = System.nanoTime();
+    try {
+      command.run();
+    } finally {
+      long wall = System.nanoTime() - start;
+      long cpuEnd = THREADS.getCurrentThreadCpuTime();
+      // -1 once someone has disabled measurement since the pool was built
+      if (cpuStart >= 0 && cpuEnd >= 0) {
+        long cpu = cpuEnd - cpuStart;
+        computeNanos.add(cpu);
+        waitNanos.add(Math.max(0, wall - cpu));
+        if (System.nanoTime() - lastTuned >= tuningInterval) {
+          retune();
+        }
+      }
+    }
+  }
+
+  private void retune() {
+    if (!tuning.compareAndSet(false, true)) {
+      return;
+    }
+    try {
+      long now = System.nanoTime();
+      long elapsed = now - lastTuned;
+      if (elapsed < tuningInterval) {
+        return;
+      }
+      lastTuned = now;
+      long wait = waitNanos.sumThenReset();
+      long compute = computeNanos.sumThenReset();
+      if (wait + compute == 0) {
+        return;
+      }
+      // A task too short for the CPU clock to register still computed a little
+      double sample = (double) wait / Math.max(compute, 1);
+      double ratio = waitComputeRatio * (1 - SMOOTHING) + sample * SMOOTHING;
+      waitComputeRatio = ratio;
+      int current = pool.getCorePoolSize();
+      int size = threadsFor(ratio);
+      if (size > current && compute >= cpus * targetUtilization * elapsed) {
+        return;
+      }
+      resize(size);
+    } finally {
+      tuning.set(false);
+    }
+  }
+
+  private int threadsFor(double waitComputeRatio) {
+    double threads = cpus * targetUtilization * (1 + waitComputeRatio);
+    return (int) Math.max(1, Math.min(maxThreads, Math.round(threads)));
+  }
+
+  // The core size may never exceed the maximum, so raise the maximum first when growing
+  private void resize(int size) {
+    if (size > pool.getMaximumPoolSize()) {
+      pool.setMaximumPoolSize(size);
+      pool.setCorePoolSize(size);
+    } else if (size < pool.getCorePoolSize()) {
+      pool.setCorePoolSize(size);
+      pool.setMaximumPoolSize(size);
+    }
+  }
+
+  // The W/C ratio the pool is currently sized for
+  public double getWaitComputeRatio() {
+    return waitComputeRatio;
+  }
+
+  public int getTargetSize() {
+    return pool.getCorePoolSize();
+  }
+
+  public int getPoolSize() {
+    return pool.getPoolSize();
+  }
+
+  @Override
+  public void shutdown() {
+    pool.shutdown();
+  }
+
+  @Override
+  public List<Runnable> shutdownNow() {
+    return pool.shutdownNow();
+  }
+
+  @Override
+  public boolean isShutdown() {
+    return pool.isShutdown();
+  }
+
+  @Override
+  public boolean isTerminated() {
+    return pool.isTerminated();
+  }
+
+  @Override
+  public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+    return pool.awaitTermination(timeout, unit);
+  }
+
+  @Override
+  public String toString() {
+    return String.format("%s[target=%d, threads=%d, W/C=%.1f]", getClass().getSimpleName(),
+        getTargetSize(), getPoolSize(), waitComputeRatio);
+  }
+
+}
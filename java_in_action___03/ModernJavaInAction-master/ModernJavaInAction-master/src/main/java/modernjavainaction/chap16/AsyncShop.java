@@ -5,15 +5,23 @@ import static modernjavainaction.chap16.Util.format;
 
 import java.util.Random;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.Future;
 
 public class AsyncShop {
 
   private final String name;
   private final Random random;
+  private final Executor executor;
 
   public AsyncShop(String name) {
+    this(name, ForkJoinPool.commonPool());
+  }
+
+  public AsyncShop(String name, Executor executor) {
     this.name = name;
+    this.executor = executor;
     random = new Random(name.charAt(0) * name.charAt(1) * name.charAt(2));
   }
 
@@ -30,7 +38,7 @@ public class AsyncShop {
     }).start();
     return futurePrice;
 */
-    return CompletableFuture.supplyAsync(() -> calculatePrice(product));
+    return CompletableFuture.supplyAsync(() -> calculatePrice(product), executor);
   }
 
   private double calculatePrice(String product) {
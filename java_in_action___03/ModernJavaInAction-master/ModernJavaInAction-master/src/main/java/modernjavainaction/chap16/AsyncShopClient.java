@@ -5,7 +5,7 @@ import java.util.concurrent.Future;
 public class AsyncShopClient {
 
   public static void main(String[] args) {
-    AsyncShop shop = new AsyncShop("BestShop");
+    AsyncShop shop = new AsyncShop("BestShop", AdaptiveExecutor.forBlockingIO());
     long start = System.nanoTime();
     Future<Double> futurePrice = shop.getPrice("myPhone");
     long incocationTime = ((System.nanoTime() - start) / 1_000_000);
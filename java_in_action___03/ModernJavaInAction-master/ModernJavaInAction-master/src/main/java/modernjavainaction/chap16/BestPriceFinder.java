@@ -1,14 +1,17 @@
 package modernjavainaction.chap16;
 
+import java.time.Duration;
 import java.util.Arrays;
 import java.util.List;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.Executor;
-import java.util.concurrent.Executors;
+import java.util.concurrent.Flow.Publisher;
 import java.util.concurrent.ThreadFactory;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
+import modernjavainaction.chap16.ExchangeService.Money;
+
 public class BestPriceFinder {
 
   private final List<Shop> shops = Arrays.asList(
@@ -18,11 +21,13 @@ public class BestPriceFinder {
       new Shop("BuyItAll"),
       new Shop("ShopEasy"));
 
-  private final Executor executor = Executors.newFixedThreadPool(shops.size(), (Runnable r) -> {
-    Thread t = new Thread(r);
-    t.setDaemon(true);
-    return t;
-  });
+  // Sized from the measured wait/compute ratio of the shop calls, not the shop count
+  private final Executor executor = AdaptiveExecutor.forBlockingIO();
+
+  private final PriceQueryEngine queryEngine =
+      new PriceQueryEngine(shops, Duration.ofMillis(3000), Duration.ofMillis(2500));
+
+  private final ExchangeRateTable rates = new ExchangeRateTable(Duration.ofMinutes(1));
 
   public List<String> findPricesSequential(String product) {
     return shops.stream()
@@ -56,6 +61,53 @@ public class BestPriceFinder {
         .map(future -> future.thenCompose(quote -> CompletableFuture.supplyAsync(() -> Discount.applyDiscount(quote), executor)));
   }
 
+  // One getPrices and one applyDiscounts round-trip per shop for the whole
+  // basket, converted from the shops' USD prices with the cached rate table
+  public List<String> findBasketPrices(List<String> products, Money currency) {
+    List<CompletableFuture<List<String>>> basketFutures = shops.stream()
+        .map(shop -> CompletableFuture.supplyAsync(() -> shop.getPrices(products), executor)
+            .thenApply(quotes -> quotes.stream()
+                .map(Quote::parse)
+                .map(quote -> convert(quote, currency))
+                .collect(Collectors.toList()))
+            .thenApplyAsync(Discount::applyDiscounts, executor))
+        .collect(Collectors.toList());
+
+    return basketFutures.stream()
+        .map(CompletableFuture::join)
+        .flatMap(List::stream)
+        .collect(Collectors.toList());
+  }
+
+  private Quote convert(Quote quote, Money currency) {
+    if (currency == Money.USD) {
+      return quote;
+    }
+    double price = Util.format(quote.getPrice() * rates.getRate(Money.USD, currency));
+    return new Quote(quote.getShopName(), price, quote.getDiscountCode());
+  }
+
+  public PriceQueryEngine.Result findPricesWithin(String product, Duration deadline) {
+    return queryEngine.findPrices(product, deadline);
+  }
+
+  public Stream<CompletableFuture<Quote>> findQuotesStream(String product) {
+    return shops.stream()
+        .map(shop -> CompletableFuture.supplyAsync(() -> shop.getPrice(product), executor))
+        .map(future -> future.thenApply(Quote::parse))
+        .map(future -> future.thenCompose(quote -> CompletableFuture.supplyAsync(() -> Discount.applyDiscountToQuote(quote), executor)));
+  }
+
+  // Each discounted quote as its shop answers, under request(n) backpressure
+  public Publisher<Quote> publishPrices(String product) {
+    return new QuotePublisher(() -> findQuotesStream(product).collect(Collectors.toList()), false);
+  }
+
+  // Only quotes that beat every earlier one
+  public Publisher<Quote> publishBestPrice(String product) {
+    return new QuotePublisher(() -> findQuotesStream(product).collect(Collectors.toList()), true);
+  }
+
   public void printPricesStream(String product) {
     long start = System.nanoTime();
     CompletableFuture[] futures = findPricesStream(product)
@@ -1,7 +1,15 @@
 package modernjavainaction.chap16;
 
+import java.time.Duration;
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Flow.Subscriber;
+import java.util.concurrent.Flow.Subscription;
 import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import modernjavainaction.chap16.ExchangeService.Money;
 
 public class BestPriceFinderMain {
 
@@ -11,7 +19,49 @@ public class BestPriceFinderMain {
     execute("sequential", () -> bestPriceFinder.findPricesSequential("myPhone27S"));
     execute("parallel", () -> bestPriceFinder.findPricesParallel("myPhone27S"));
     execute("composed CompletableFuture", () -> bestPriceFinder.findPricesFuture("myPhone27S"));
+    execute("deadline-bounded query", () -> bestPriceFinder.findPricesWithin("myPhone27S", Duration.ofMillis(2500)).getPrices());
+    List<String> basket = IntStream.rangeClosed(1, 1000)
+        .mapToObj(i -> "myPhone" + i)
+        .collect(Collectors.toList());
+    execute("batched basket of " + basket.size(), () -> bestPriceFinder.findBasketPrices(basket, Money.EUR).subList(0, 5));
     bestPriceFinder.printPricesStream("myPhone27S");
+    printBestPrices("myPhone27S");
+  }
+
+  private static void printBestPrices(String product) {
+    long start = System.nanoTime();
+    CountDownLatch done = new CountDownLatch(1);
+    bestPriceFinder.publishBestPrice(product).subscribe(new Subscriber<Quote>() {
+      private Subscription subscription;
+
+      @Override
+      public void onSubscribe(Subscription subscription) {
+        this.subscription = subscription;
+        subscription.request(1);
+      }
+
+      @Override
+      public void onNext(Quote quote) {
+        System.out.println("Best so far: " + quote + " (after " + ((System.nanoTime() - start) / 1_000_000) + " msecs)");
+        subscription.request(1);
+      }
+
+      @Override
+      public void onError(Throwable t) {
+        t.printStackTrace();
+        done.countDown();
+      }
+
+      @Override
+      public void onComplete() {
+        done.countDown();
+      }
+    });
+    try {
+      done.await();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
   }
 
   private static void execute(String msg, Supplier<List<String>> s) {
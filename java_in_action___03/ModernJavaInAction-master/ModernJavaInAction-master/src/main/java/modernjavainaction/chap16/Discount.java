@@ -3,6 +3,9 @@ package modernjavainaction.chap16;
 import static modernjavainaction.chap16.Util.delay;
 import static modernjavainaction.chap16.Util.format;
 
+import java.util.ArrayList;
+import java.util.List;
+
 public class Discount {
 
   public enum Code {
@@ -19,8 +22,27 @@ public class Discount {
     return quote.getShopName() + " price is " + Discount.apply(quote.getPrice(), quote.getDiscountCode());
   }
 
+  // The quote with its discount applied, so its code is NONE
+  public static Quote applyDiscountToQuote(Quote quote) {
+    return new Quote(quote.getShopName(), Discount.apply(quote.getPrice(), quote.getDiscountCode()), Code.NONE);
+  }
+
+  // Discounts a batch of quotes in one round-trip, in the order given
+  public static List<String> applyDiscounts(List<Quote> quotes) {
+    delay();
+    List<String> prices = new ArrayList<>(quotes.size());
+    for (Quote quote : quotes) {
+      prices.add(quote.getShopName() + " price is " + discounted(quote.getPrice(), quote.getDiscountCode()));
+    }
+    return prices;
+  }
+
   private static double apply(double price, Code code) {
     delay();
+    return discounted(price, code);
+  }
+
+  private static double discounted(double price, Code code) {
     return format(price * (100 - code.percentage) / 100);
   }
 
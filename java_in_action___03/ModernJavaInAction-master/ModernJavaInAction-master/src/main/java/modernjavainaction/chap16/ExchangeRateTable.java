@@ -0,0 +1,66 @@
+package modernjavainaction.chap16;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicReference;
+
+import modernjavainaction.chap16.ExchangeService.Money;
+
+// Caches ExchangeService rates for a fixed time to live: one getRates
+// round-trip fetches every currency against USD, cross rates are derived from
+// that table until it expires, and callers that find it stale at the same time
+// share a single refresh instead of each calling the service.
+public class ExchangeRateTable {
+
+  private final long ttlNanos;
+  private final AtomicReference<CompletableFuture<Snapshot>> table = new AtomicReference<>();
+
+  public ExchangeRateTable(Duration ttl) {
+    this.ttlNanos = ttl.toNanos();
+  }
+
+  public double getRate(Money source, Money destination) {
+    Map<Money, Double> rates = current();
+    return rates.get(destination) / rates.get(source);
+  }
+
+  private Map<Money, Double> current() {
+    while (true) {
+      CompletableFuture<Snapshot> snapshot = table.get();
+      if (snapshot != null) {
+        if (!snapshot.isDone()) {
+          return snapshot.join().rates;
+        }
+        if (!snapshot.isCompletedExceptionally() && System.nanoTime() - snapshot.join().expiresAt < 0) {
+          return snapshot.join().rates;
+        }
+      }
+      CompletableFuture<Snapshot> refresh = new CompletableFuture<>();
+      if (table.compareAndSet(snapshot, refresh)) {
+        try {
+          refresh.complete(new Snapshot(ExchangeService.getRates(), System.nanoTime() + ttlNanos));
+        } catch (Throwable t) {
+          // Any failure, Errors included, must complete refresh, or every
+          // caller that finds it pending waits in join forever
+          refresh.completeExceptionally(t);
+          throw t;
+        }
+        return refresh.join().rates;
+      }
+    }
+  }
+
+  private static class Snapshot {
+
+    private final Map<Money, Double> rates;
+    private final long expiresAt;
+
+    Snapshot(Map<Money, Double> rates, long expiresAt) {
+      this.rates = rates;
+      this.expiresAt = expiresAt;
+    }
+
+  }
+
+}
@@ -2,6 +2,9 @@ package modernjavainaction.chap16;
 
 import static modernjavainaction.chap16.Util.delay;
 
+import java.util.EnumMap;
+import java.util.Map;
+
 public class ExchangeService {
 
   public static final double DEFAULT_RATE = 1.35;
@@ -20,6 +23,16 @@ public class ExchangeService {
     return getRateWithDelay(source, destination);
   }
 
+  // Every currency's rate against USD in one round-trip
+  public static Map<Money, Double> getRates() {
+    delay();
+    Map<Money, Double> rates = new EnumMap<>(Money.class);
+    for (Money money : Money.values()) {
+      rates.put(money, money.rate);
+    }
+    return rates;
+  }
+
   private static double getRateWithDelay(Money source, Money destination) {
     delay();
     return destination.rate / source.rate;
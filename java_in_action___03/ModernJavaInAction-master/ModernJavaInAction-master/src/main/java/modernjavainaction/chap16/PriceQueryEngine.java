@@ -0,0 +1,250 @@
+package modernjavainaction.chap16;
+
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// Queries every shop at once under an overall deadline and returns whatever
+// discounted prices arrived in time instead of waiting for the slowest shop.
+// Each shop gets its own timeout (never longer than the deadline), and a shop
+// that has not answered after the hedge delay, or whose first request failed
+// sooner, gets a second, duplicate request; the first answer wins and the
+// loser is cancelled. The hedge delay tracks the
+// 95th percentile of recent shop latencies.
+//
+// Every request blocks a thread for the whole Shop/Discount round-trip, so
+// the executor must be able to run one task per outstanding request: the
+// default is an unbounded pool of daemon threads, and on a JDK with virtual
+// threads pass Executors.newVirtualThreadPerTaskExecutor() to scale to
+// thousands of shops.
+public class PriceQueryEngine {
+
+  // Only starts hedges; a cancelled hedge leaves the queue at once
+  private static final ScheduledThreadPoolExecutor HEDGE_TIMER = hedgeTimer();
+
+  private final List<Shop> shops;
+  private final ExecutorService executor;
+  private final Duration shopTimeout;
+  private final LatencyWindow latencies;
+
+  public PriceQueryEngine(List<Shop> shops, Duration shopTimeout, Duration initialHedgeDelay) {
+    this(shops, shopTimeout, initialHedgeDelay, Executors.newCachedThreadPool(r -> {
+      Thread t = new Thread(r);
+      t.setDaemon(true);
+      return t;
+    }));
+  }
+
+  public PriceQueryEngine(List<Shop> shops, Duration shopTimeout, Duration initialHedgeDelay,
+      ExecutorService executor) {
+    this.shops = List.copyOf(shops);
+    this.shopTimeout = shopTimeout;
+    this.latencies = new LatencyWindow(1024, initialHedgeDelay.toNanos());
+    this.executor = executor;
+  }
+
+  public Result findPrices(String product, Duration deadline) {
+    return findPricesAsync(product, deadline).join();
+  }
+
+  public CompletableFuture<Result> findPricesAsync(String product, Duration deadline) {
+    long timeout = Math.min(shopTimeout.toNanos(), deadline.toNanos());
+    long hedgeDelay = latencies.percentile(0.95);
+    List<CompletableFuture<String>> prices = new ArrayList<>(shops.size());
+    for (Shop shop : shops) {
+      prices.add(hedgedPrice(shop, product, hedgeDelay).orTimeout(timeout, NANOSECONDS));
+    }
+    CompletableFuture<?>[] settled = prices.stream()
+        .map(f -> f.handle((price, failure) -> null))
+        .toArray(CompletableFuture[]::new);
+    return CompletableFuture.allOf(settled).thenApply(v -> {
+      List<String> arrived = new ArrayList<>();
+      List<String> missing = new ArrayList<>();
+      for (int i = 0; i < shops.size(); i++) {
+        CompletableFuture<String> price = prices.get(i);
+        if (!price.isCompletedExceptionally()) {
+          arrived.add(price.join());
+        } else {
+          missing.add(shops.get(i).getName());
+        }
+      }
+      return new Result(arrived, missing);
+    });
+  }
+
+  private CompletableFuture<String> hedgedPrice(Shop shop, String product, long hedgeDelay) {
+    HedgedRequest request = new HedgedRequest(shop, product);
+    request.launch();
+    ScheduledFuture<?> timer = HEDGE_TIMER.schedule(() -> executor.execute(request::hedge), hedgeDelay, NANOSECONDS);
+    request.timer = timer;
+    if (request.hedged.get()) {
+      // The primary failed while the timer was being scheduled
+      timer.cancel(false);
+    }
+    // Whether the shop answered, failed or timed out, stop the hedge if it has
+    // not started yet and the attempts still running
+    request.result.whenComplete((price, failure) -> {
+      timer.cancel(false);
+      request.attempts.forEach(a -> a.cancel(true));
+    });
+    return request.result;
+  }
+
+  // A primary attempt and at most one hedge for one shop; the hedge starts
+  // when the timer fires or as soon as the primary fails, whichever is first
+  private class HedgedRequest {
+
+    final CompletableFuture<String> result = new CompletableFuture<>();
+    final List<CompletableFuture<String>> attempts = new CopyOnWriteArrayList<>();
+    final AtomicBoolean hedged = new AtomicBoolean();
+    volatile ScheduledFuture<?> timer;
+    private final Shop shop;
+    private final String product;
+    private final long start = System.nanoTime();
+
+    HedgedRequest(Shop shop, String product) {
+      this.shop = shop;
+      this.product = product;
+    }
+
+    void hedge() {
+      if (hedged.compareAndSet(false, true)) {
+        launch();
+      }
+    }
+
+    void launch() {
+      if (result.isDone()) {
+        return;
+      }
+      CompletableFuture<String> attempt = attempt(shop, product);
+      attempts.add(attempt);
+      // result may have completed since the check above, after its callback
+      // cancelled the attempts it could see; this one was not among them
+      if (result.isDone()) {
+        attempt.cancel(true);
+        return;
+      }
+      attempt.whenComplete((price, failure) -> {
+        if (failure == null) {
+          if (result.complete(price)) {
+            latencies.record(System.nanoTime() - start);
+          }
+        } else if (!hedged.get()) {
+          // The primary failed before the hedge delay: hedge now, not when the timer fires
+          ScheduledFuture<?> t = timer;
+          if (t != null) {
+            t.cancel(false);
+          }
+          hedge();
+        } else if (attempts.size() == 2 && attempts.stream().allMatch(CompletableFuture::isDone)) {
+          // Give up once both have failed
+          result.completeExceptionally(failure);
+        }
+      });
+    }
+
+  }
+
+  // One Shop + Discount round-trip; cancelling the future interrupts the thread running it
+  private CompletableFuture<String> attempt(Shop shop, String product) {
+    CompletableFuture<String> price = new CompletableFuture<>();
+    Future<?> task = executor.submit(() -> {
+      try {
+        price.complete(Discount.applyDiscount(Quote.parse(shop.getPrice(product))));
+      } catch (Throwable t) {
+        price.completeExceptionally(t);
+      }
+    });
+    price.whenComplete((p, failure) -> {
+      if (price.isCancelled()) {
+        task.cancel(true);
+      }
+    });
+    return price;
+  }
+
+  private static ScheduledThreadPoolExecutor hedgeTimer() {
+    ScheduledThreadPoolExecutor timer = new ScheduledThreadPoolExecutor(1, r -> {
+      Thread t = new Thread(r, "price-query-hedge-timer");
+      t.setDaemon(true);
+      return t;
+    });
+    timer.setRemoveOnCancelPolicy(true);
+    return timer;
+  }
+
+  public static class Result {
+
+    private final List<String> prices;
+    private final List<String> missingShops;
+
+    Result(List<String> prices, List<String> missingShops) {
+      this.prices = Collections.unmodifiableList(prices);
+      this.missingShops = Collections.unmodifiableList(missingShops);
+    }
+
+    public List<String> getPrices() {
+      return prices;
+    }
+
+    // Shops that failed or did not answer before their timeout
+    public List<String> getMissingShops() {
+      return missingShops;
+    }
+
+    public boolean isComplete() {
+      return missingShops.isEmpty();
+    }
+
+    @Override
+    public String toString() {
+      return prices + (isComplete() ? "" : " (no answer from " + missingShops + ")");
+    }
+
+  }
+
+  // The most recent successful latencies, for the hedge delay percentile
+  private static class LatencyWindow {
+
+    private final long[] samples;
+    private final long initial;
+    private int count;
+    private int next;
+
+    LatencyWindow(int size, long initial) {
+      this.samples = new long[size];
+      this.initial = initial;
+    }
+
+    synchronized void record(long nanos) {
+      samples[next] = nanos;
+      next = (next + 1) % samples.length;
+      count = Math.min(count + 1, samples.length);
+    }
+
+    // Falls back to the initial delay until there are enough samples to rank
+    synchronized long percentile(double p) {
+      if (count < 20) {
+        return initial;
+      }
+      long[] sorted = Arrays.copyOf(samples, count);
+      Arrays.sort(sorted);
+      return sorted[Math.min(count - 1, (int) Math.ceil(p * count) - 1)];
+    }
+
+  }
+
+}
@@ -12,12 +12,8 @@ public class Quote {
     this.discountCode = discountCode;
   }
 
-  public static Quote parse(String s) {
-    String[] split = s.split(":");
-    String shopName = split[0];
-    double price = Double.parseDouble(split[1]);
-    Discount.Code discountCode = Discount.Code.valueOf(split[2]);
-    return new Quote(shopName, price, discountCode);
+  public static Quote parse(CharSequence s) {
+    return QuoteParser.parse(s);
   }
 
   public String getShopName() {
@@ -32,4 +28,9 @@ public class Quote {
     return discountCode;
   }
 
+  @Override
+  public String toString() {
+    return shopName + ":" + price + ":" + discountCode;
+  }
+
 }
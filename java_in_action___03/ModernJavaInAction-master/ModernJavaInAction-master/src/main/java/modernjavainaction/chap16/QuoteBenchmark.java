@@ -0,0 +1,79 @@
+package modernjavainaction.chap16;
+
+import java.text.DecimalFormat;
+import java.text.DecimalFormatSymbols;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Quote.parse and Util.format against the split/valueOf parser and the
+// synchronized DecimalFormat round trip they replaced, on four threads so the
+// shared formatter's lock shows up (override with -t)
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(2)
+@Threads(4)
+@Measurement(iterations = 5)
+@Warmup(iterations = 3)
+public class QuoteBenchmark {
+
+  private static final DecimalFormat legacyFormatter = new DecimalFormat("#.##", new DecimalFormatSymbols(Locale.US));
+  private static final int SAMPLES = 1024;
+
+  private final String[] quotes = new String[SAMPLES];
+  private final double[] prices = new double[SAMPLES];
+  private int next;
+
+  @Setup
+  public void setup() {
+    Random random = new Random(42);
+    Discount.Code[] codes = Discount.Code.values();
+    for (int i = 0; i < SAMPLES; i++) {
+      prices[i] = random.nextDouble() * 200;
+      quotes[i] = "Shop" + random.nextInt(100) + ":" + Util.format(prices[i]) + ":" + codes[random.nextInt(codes.length)];
+    }
+  }
+
+  private int nextIndex() {
+    next = (next + 1) & (SAMPLES - 1);
+    return next;
+  }
+
+  @Benchmark
+  public Quote legacyParse() {
+    String[] split = quotes[nextIndex()].split(":");
+    return new Quote(split[0], Double.parseDouble(split[1]), Discount.Code.valueOf(split[2]));
+  }
+
+  @Benchmark
+  public Quote parse() {
+    return Quote.parse(quotes[nextIndex()]);
+  }
+
+  @Benchmark
+  public double legacyFormat() {
+    double price = prices[nextIndex()];
+    synchronized (legacyFormatter) {
+      return Double.parseDouble(legacyFormatter.format(price));
+    }
+  }
+
+  @Benchmark
+  public double format() {
+    return Util.format(prices[nextIndex()]);
+  }
+
+}
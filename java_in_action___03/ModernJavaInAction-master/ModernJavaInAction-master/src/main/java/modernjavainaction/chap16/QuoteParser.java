@@ -0,0 +1,131 @@
+package modernjavainaction.chap16;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+// Parses "shop:price:CODE" straight off a CharSequence, with no split array,
+// substrings, Double.parseDouble or Code.valueOf. A plain decimal price of up
+// to 15 significant digits is converted with one correctly rounded division,
+// which gives the same double parseDouble would; anything else falls back to
+// parseDouble. Shop names are interned in a lock-free table, so once a shop
+// has been seen the Quote is the only allocation.
+final class QuoteParser {
+
+  private static final Discount.Code[] CODES = Discount.Code.values();
+  private static final double[] POWERS_OF_TEN = new double[16];
+  private static final int NAME_SLOTS = 4096;
+  private static final int NAME_PROBES = 8;
+  private static final AtomicReferenceArray<String> names = new AtomicReferenceArray<>(NAME_SLOTS);
+
+  static {
+    POWERS_OF_TEN[0] = 1;
+    for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+      POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+    }
+  }
+
+  private QuoteParser() {}
+
+  static Quote parse(CharSequence s) {
+    int first = indexOf(s, ':', 0);
+    int second = first < 0 ? -1 : indexOf(s, ':', first + 1);
+    if (second < 0) {
+      throw new IllegalArgumentException("Not a quote: " + s);
+    }
+    int end = indexOf(s, ':', second + 1);
+    if (end < 0) {
+      end = s.length();
+    }
+    return new Quote(shopName(s, 0, first), price(s, first + 1, second), code(s, second + 1, end));
+  }
+
+  private static int indexOf(CharSequence s, char c, int from) {
+    for (int i = from; i < s.length(); i++) {
+      if (s.charAt(i) == c) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  private static String shopName(CharSequence s, int from, int to) {
+    int hash = 0;
+    for (int i = from; i < to; i++) {
+      hash = 31 * hash + s.charAt(i);
+    }
+    int slot = (hash ^ (hash >>> 16)) & (NAME_SLOTS - 1);
+    for (int probe = 0; probe < NAME_PROBES; probe++, slot = (slot + 1) & (NAME_SLOTS - 1)) {
+      String name = names.get(slot);
+      if (name == null) {
+        String added = s.subSequence(from, to).toString();
+        if (names.compareAndSet(slot, null, added)) {
+          return added;
+        }
+        name = names.get(slot);
+      }
+      if (regionEquals(name, s, from, to)) {
+        return name;
+      }
+    }
+    // Table neighbourhood is full: correct, just not interned
+    return s.subSequence(from, to).toString();
+  }
+
+  private static double price(CharSequence s, int from, int to) {
+    int i = from;
+    boolean negative = false;
+    if (i < to && (s.charAt(i) == '-' || s.charAt(i) == '+')) {
+      negative = s.charAt(i) == '-';
+      i++;
+    }
+    long mantissa = 0;
+    int significant = 0;
+    int scale = 0;
+    boolean dot = false;
+    boolean digits = false;
+    for (; i < to; i++) {
+      char c = s.charAt(i);
+      if (c >= '0' && c <= '9') {
+        mantissa = mantissa * 10 + (c - '0');
+        digits = true;
+        if (mantissa != 0 && ++significant > 15) {
+          return Double.parseDouble(s.subSequence(from, to).toString());
+        }
+        if (dot) {
+          scale++;
+        }
+      } else if (c == '.' && !dot) {
+        dot = true;
+      } else {
+        return Double.parseDouble(s.subSequence(from, to).toString());
+      }
+    }
+    if (!digits || scale >= POWERS_OF_TEN.length) {
+      return Double.parseDouble(s.subSequence(from, to).toString());
+    }
+    // mantissa < 2^53 and 10^scale are both exact, so this is one rounding
+    double value = mantissa / POWERS_OF_TEN[scale];
+    return negative ? -value : value;
+  }
+
+  private static Discount.Code code(CharSequence s, int from, int to) {
+    for (Discount.Code code : CODES) {
+      if (regionEquals(code.name(), s, from, to)) {
+        return code;
+      }
+    }
+    throw new IllegalArgumentException("No discount code " + s.subSequence(from, to));
+  }
+
+  private static boolean regionEquals(String expected, CharSequence s, int from, int to) {
+    if (expected.length() != to - from) {
+      return false;
+    }
+    for (int i = 0; i < expected.length(); i++) {
+      if (expected.charAt(i) != s.charAt(from + i)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+}
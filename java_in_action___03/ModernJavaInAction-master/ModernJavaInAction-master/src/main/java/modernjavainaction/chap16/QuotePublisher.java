@@ -0,0 +1,176 @@
+package modernjavainaction.chap16;
+
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Flow.Publisher;
+import java.util.concurrent.Flow.Subscriber;
+import java.util.concurrent.Flow.Subscription;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+// Cold Flow.Publisher over a price query: every subscriber starts its own
+// queries and receives each Quote as its shop answers, never more than it has
+// requested. In best-so-far mode only quotes cheaper than every earlier one
+// are published, and a subscriber that falls behind gets just the latest best
+// instead of each intermediate one. Shops that fail are skipped; onComplete
+// follows the last shop to settle.
+public class QuotePublisher implements Publisher<Quote> {
+
+  private final Supplier<List<CompletableFuture<Quote>>> query;
+  private final boolean bestSoFar;
+
+  public QuotePublisher(Supplier<List<CompletableFuture<Quote>>> query, boolean bestSoFar) {
+    this.query = query;
+    this.bestSoFar = bestSoFar;
+  }
+
+  @Override
+  public void subscribe(Subscriber<? super Quote> subscriber) {
+    // Reactive Streams rule 1.9
+    Objects.requireNonNull(subscriber);
+    QuoteSubscription subscription = new QuoteSubscription(subscriber, bestSoFar);
+    subscriber.onSubscribe(subscription);
+    subscription.start(query);
+  }
+
+  private static class QuoteSubscription implements Subscription {
+
+    private final Subscriber<? super Quote> subscriber;
+    private final boolean bestSoFar;
+    private final AtomicInteger wip = new AtomicInteger();
+    // Guarded by this
+    private final Queue<Quote> pending = new ArrayDeque<>();
+    private Quote best;
+    private long demand;
+    private int outstanding;
+    private boolean started, cancelled;
+    private Throwable error;
+    private List<CompletableFuture<Quote>> futures;
+
+    QuoteSubscription(Subscriber<? super Quote> subscriber, boolean bestSoFar) {
+      this.subscriber = subscriber;
+      this.bestSoFar = bestSoFar;
+    }
+
+    void start(Supplier<List<CompletableFuture<Quote>>> query) {
+      List<CompletableFuture<Quote>> launched;
+      synchronized (this) {
+        if (cancelled) {
+          return;
+        }
+        try {
+          launched = query.get();
+        } catch (Throwable ex) {
+          // Reported through onError by drain() instead of escaping subscribe()
+          error = ex;
+          launched = List.of();
+        }
+        futures = launched;
+        outstanding = launched.size();
+        started = true;
+      }
+      for (CompletableFuture<Quote> future : launched) {
+        future.whenComplete((quote, failure) -> arrived(failure == null ? quote : null));
+      }
+      drain();
+    }
+
+    private void arrived(Quote quote) {
+      synchronized (this) {
+        outstanding--;
+        if (quote != null && !cancelled) {
+          if (!bestSoFar) {
+            pending.add(quote);
+          } else if (best == null || quote.getPrice() < best.getPrice()) {
+            best = quote;
+            // Conflate: a better quote replaces one the subscriber has not taken yet
+            pending.clear();
+            pending.add(quote);
+          }
+        }
+      }
+      drain();
+    }
+
+    @Override
+    public void request(long n) {
+      synchronized (this) {
+        if (n <= 0) {
+          error = new IllegalArgumentException("non-positive request: " + n);
+        } else {
+          demand += n;
+          if (demand < 0) {
+            demand = Long.MAX_VALUE;
+          }
+        }
+      }
+      drain();
+    }
+
+    @Override
+    public void cancel() {
+      List<CompletableFuture<Quote>> running;
+      synchronized (this) {
+        cancelled = true;
+        pending.clear();
+        running = futures;
+      }
+      if (running != null) {
+        running.forEach(f -> f.cancel(true));
+      }
+    }
+
+    // Only one thread emits at a time; signals that arrive meanwhile make it loop again
+    private void drain() {
+      if (wip.getAndIncrement() != 0) {
+        return;
+      }
+      int missed = 1;
+      do {
+        while (true) {
+          Quote next = null;
+          Throwable failure;
+          boolean done;
+          synchronized (this) {
+            if (cancelled) {
+              return;
+            }
+            failure = error;
+            done = started && outstanding == 0 && pending.isEmpty();
+            if (failure == null && demand > 0 && !pending.isEmpty()) {
+              next = pending.poll();
+              demand--;
+            }
+          }
+          if (failure != null) {
+            cancel();
+            subscriber.onError(failure);
+            return;
+          }
+          if (done) {
+            cancel();
+            subscriber.onComplete();
+            return;
+          }
+          if (next == null) {
+            break;
+          }
+          try {
+            subscriber.onNext(next);
+          } catch (Throwable ex) {
+            // Reactive Streams rule 2.13: treat the subscription as cancelled
+            cancel();
+            subscriber.onError(ex);
+            return;
+          }
+        }
+        missed = wip.addAndGet(-missed);
+      } while (missed != 0);
+    }
+
+  }
+
+}
@@ -3,6 +3,9 @@ package modernjavainaction.chap16;
 import static modernjavainaction.chap16.Util.delay;
 import static modernjavainaction.chap16.Util.format;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
 import java.util.Random;
 
 public class Shop {
@@ -17,15 +20,33 @@ public class Shop {
 
   public String getPrice(String product) {
     double price = calculatePrice(product);
-    Discount.Code code = Discount.Code.values()[random.nextInt(Discount.Code.values().length)];
-    return name + ":" + price + ":" + code;
+    return quote(price);
+  }
+
+  // Quotes a whole basket in one round-trip, in the order of products
+  public List<String> getPrices(Collection<String> products) {
+    delay();
+    List<String> quotes = new ArrayList<>(products.size());
+    for (String product : products) {
+      quotes.add(quote(price(product)));
+    }
+    return quotes;
   }
 
   public double calculatePrice(String product) {
     delay();
+    return price(product);
+  }
+
+  private double price(String product) {
     return format(random.nextDouble() * product.charAt(0) + product.charAt(1));
   }
 
+  private String quote(double price) {
+    Discount.Code code = Discount.Code.values()[random.nextInt(Discount.Code.values().length)];
+    return name + ":" + price + ":" + code;
+  }
+
   public String getName() {
     return name;
   }
@@ -1,9 +1,8 @@
 package modernjavainaction.chap16;
 
-import java.text.DecimalFormat;
-import java.text.DecimalFormatSymbols;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
 import java.util.List;
-import java.util.Locale;
 import java.util.Random;
 import java.util.concurrent.CompletableFuture;
 import java.util.stream.Collectors;
@@ -11,7 +10,6 @@ import java.util.stream.Collectors;
 public class Util {
 
   private static final Random RANDOM = new Random(0);
-  private static final DecimalFormat formatter = new DecimalFormat("#.##", new DecimalFormatSymbols(Locale.US));
 
   public static void delay() {
     int delay = 1000;
@@ -23,10 +21,29 @@ public class Util {
     }
   }
 
+  // Rounds to two decimals, half-even on the exact binary value, like the
+  // DecimalFormat("#.##") round trip it replaces but without a lock or any
+  // allocation. NaN and infinities are returned unchanged.
   public static double format(double number) {
-    synchronized (formatter) {
-      return new Double(formatter.format(number));
+    if (!(Math.abs(number) < 1e13)) {
+      if (Double.isNaN(number) || Double.isInfinite(number)) {
+        return number;
+      }
+      // number * 100 would no longer be exact enough to round in doubles
+      return new BigDecimal(number).setScale(2, RoundingMode.HALF_EVEN).doubleValue();
     }
+    double scaled = number * 100;
+    double rounded = Math.rint(scaled);
+    if (Math.abs(scaled - rounded) == 0.5) {
+      // A tie after rounding the product; the exact product's error decides
+      double error = Math.fma(number, 100, -scaled);
+      if (error > 0) {
+        rounded = Math.ceil(scaled);
+      } else if (error < 0) {
+        rounded = Math.floor(scaled);
+      }
+    }
+    return rounded / 100;
   }
 
   public static <T> CompletableFuture<List<T>> sequence(List<CompletableFuture<T>> futures) {
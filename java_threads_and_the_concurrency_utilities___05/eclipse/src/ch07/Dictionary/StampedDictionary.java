@@ -0,0 +1,80 @@
+package ch07.Dictionary;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ExecutorService;
+
+import java.util.concurrent.locks.StampedLock;
+
+// Dictionary with a StampedLock: the reader looks entries up under an
+// optimistic stamp, which costs no write to shared state, and only takes the
+// read lock when the writer got in between and the stamp fails to validate.
+public class StampedDictionary {
+	public static void main(String[] args) {
+		final String[] words = { "hypocalcemia", "prolixity", "assiduous", "indefatigable", "castellan" };
+
+		final String[] definitions = { "a deficiency of calcium in the blood", "unduly prolonged or drawn out",
+				"showing great care, attention, and effort",
+				"able to work or continue for a lengthy time without tiring",
+				"the govenor or warden of a castle or fort" };
+
+		final Map<String, String> dictionary = new HashMap<String, String>();
+
+		final StampedLock sl = new StampedLock();
+
+		Runnable writer = () -> {
+			for (int i = 0; i < words.length; i++) {
+				long stamp = sl.writeLock();
+				try {
+					dictionary.put(words[i], definitions[i]);
+					System.out.println("writer storing " + words[i] + " entry");
+				} finally {
+					sl.unlockWrite(stamp);
+				}
+
+				try {
+					Thread.sleep(1);
+				} catch (InterruptedException ie) {
+					System.err.println("writer " + "interrupted");
+				}
+			}
+		};
+		ExecutorService es = Executors.newFixedThreadPool(2);
+		es.submit(writer);
+
+		Runnable reader = () -> {
+			int iteration = 0;
+			while (true) {
+				if (iteration++ == 50)
+					break;
+				int i = (int) (Math.random() * words.length);
+				String definition = null;
+				boolean optimistic = false;
+				long stamp = sl.tryOptimisticRead();
+				if (stamp != 0) {
+					try {
+						definition = dictionary.get(words[i]);
+						optimistic = sl.validate(stamp);
+					} catch (RuntimeException re) {
+						// the writer resized the map under us; read again below
+					}
+				}
+				if (!optimistic) {
+					stamp = sl.readLock();
+					try {
+						definition = dictionary.get(words[i]);
+					} finally {
+						sl.unlockRead(stamp);
+					}
+				}
+				System.out.println("reader accessing " + words[i] + ": " + definition + " entry"
+						+ (optimistic ? "" : " (under read lock)"));
+			}
+		};
+		es.submit(reader);
+		es.shutdown();
+
+	}
+}
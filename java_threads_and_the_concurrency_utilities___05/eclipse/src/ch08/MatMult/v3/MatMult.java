@@ -0,0 +1,129 @@
+package ch08.MatMult.v3;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+// Adds a * b into c by recursively halving c into blocks (the longer side 
+// first) until a block is at most blockSize x blockSize, then multiplying 
+// the block in i-k-j order over blockSize-wide slices of k, so the inner 
+// loop walks a row of b and a row of c contiguously and the slice of b it 
+// reuses stays in cache
+public class MatMult extends RecursiveAction
+{
+   public static final int DEFAULT_BLOCK_SIZE = 128;
+
+   private final Matrix a, b, c;
+   private final int row0, row1, col0, col1;
+   private final int blockSize;
+
+   public MatMult(Matrix a, Matrix b, Matrix c)
+   {
+      this(a, b, c, DEFAULT_BLOCK_SIZE);
+   }
+
+   public MatMult(Matrix a, Matrix b, Matrix c, int blockSize)
+   {
+      this(a, b, c, 0, a.getRows(), 0, b.getCols(), blockSize);
+      if (a.getCols() != b.getRows())
+         throw new IllegalArgumentException("rows/columns mismatch");
+      if (c.getRows() != a.getRows() || c.getCols() != b.getCols())
+         throw new IllegalArgumentException("result size mismatch");
+      if (blockSize <= 0)
+         throw new IllegalArgumentException("blockSize must be positive");
+   }
+
+   private MatMult(Matrix a, Matrix b, Matrix c, int row0, int row1,
+                   int col0, int col1, int blockSize)
+   {
+      this.a = a;
+      this.b = b;
+      this.c = c;
+      this.row0 = row0;
+      this.row1 = row1;
+      this.col0 = col0;
+      this.col1 = col1;
+      this.blockSize = blockSize;
+   }
+
+   @Override
+   public void compute()
+   {
+      int rows = row1 - row0, cols = col1 - col0;
+      if (rows <= blockSize && cols <= blockSize)
+         multiplyBlock(a, b, c, row0, row1, col0, col1, blockSize);
+      else if (rows >= cols)
+      {
+         int mid = (row0 + row1) >>> 1;
+         invokeAll(new MatMult(a, b, c, row0, mid, col0, col1, blockSize),
+                   new MatMult(a, b, c, mid, row1, col0, col1, blockSize));
+      }
+      else
+      {
+         int mid = (col0 + col1) >>> 1;
+         invokeAll(new MatMult(a, b, c, row0, row1, col0, mid, blockSize),
+                   new MatMult(a, b, c, row0, row1, mid, col1, blockSize));
+      }
+   }
+
+   public static void multiplyBlock(Matrix a, Matrix b, Matrix c, int row0,
+                                    int row1, int col0, int col1,
+                                    int blockSize)
+   {
+      int[] av = a.values(), bv = b.values(), cv = c.values();
+      int n = a.getCols(), bCols = b.getCols();
+      for (int k0 = 0; k0 < n; k0 += blockSize)
+      {
+         int k1 = Math.min(k0 + blockSize, n);
+         for (int i = row0; i < row1; i++)
+         {
+            int aRow = i * n, cRow = i * bCols;
+            for (int k = k0; k < k1; k++)
+            {
+               int aik = av[aRow + k];
+               int bRow = k * bCols;
+               for (int j = col0; j < col1; j++)
+                  cv[cRow + j] += aik * bv[bRow + j];
+            }
+         }
+      }
+   }
+
+   public static Matrix multiply(Matrix a, Matrix b, int blockSize)
+   {
+      Matrix c = new Matrix(a.getRows(), b.getCols());
+      ForkJoinPool.commonPool().invoke(new MatMult(a, b, c, blockSize));
+      return c;
+   }
+
+   public static void dump(Matrix m)
+   {
+      for (int i = 0; i < m.getRows(); i++)
+      {
+         for (int j = 0; j < m.getCols(); j++)
+            System.out.print(m.getValue(i, j) + " ");
+         System.out.println();
+      }
+      System.out.println();
+   }
+
+   public static void main(String[] args)
+   {
+      Matrix a = new Matrix(2, 3);
+      a.setValue(0, 0, 1); // | 1 2 3 |
+      a.setValue(0, 1, 2); // | 4 5 6 |
+      a.setValue(0, 2, 3);
+      a.setValue(1, 0, 4);
+      a.setValue(1, 1, 5);
+      a.setValue(1, 2, 6);
+      dump(a);
+      Matrix b = new Matrix(3, 2);
+      b.setValue(0, 0, 7); // | 7 1 |
+      b.setValue(1, 0, 8); // | 8 2 |
+      b.setValue(2, 0, 9); // | 9 3 |
+      b.setValue(0, 1, 1);
+      b.setValue(1, 1, 2);
+      b.setValue(2, 1, 3);
+      dump(b);
+      dump(multiply(a, b, 1)); // block size 1 exercises the recursion
+   }
+}
@@ -0,0 +1,95 @@
+package ch08.MatMult.v3;
+
+import java.util.Random;
+
+import java.util.concurrent.ForkJoinPool;
+
+// Times v1 (sequential), v2 (one task per row) and v3 (blocked) on n x n 
+// matrices and checks that v3 agrees with the others. Usage:
+//    MatMultBench [blockSize [naiveLimit [n...]]]
+// v1 and v2 are O(n^3) with column strides, so they are only run up to 
+// naiveLimit (default 1024); a 4096 multiply in v1 takes tens of minutes.
+public class MatMultBench
+{
+   private static final int RUNS = 3;
+
+   public static void main(String[] args)
+   {
+      int blockSize = args.length > 0 ? Integer.parseInt(args[0]) 
+                                      : MatMult.DEFAULT_BLOCK_SIZE;
+      int naiveLimit = args.length > 1 ? Integer.parseInt(args[1]) : 1024;
+      int[] sizes = { 256, 512, 1024, 2048, 4096 };
+      if (args.length > 2)
+      {
+         sizes = new int[args.length - 2];
+         for (int i = 2; i < args.length; i++)
+            sizes[i - 2] = Integer.parseInt(args[i]);
+      }
+      ForkJoinPool pool = new ForkJoinPool();
+      System.out.printf("%6s %12s %12s %12s%n", "n", "v1 ms", "v2 ms", "v3 ms");
+      for (int n : sizes)
+      {
+         Random random = new Random(n);
+         int[][] values = new int[n][n], values2 = new int[n][n];
+         for (int i = 0; i < n; i++)
+            for (int j = 0; j < n; j++)
+            {
+               values[i][j] = random.nextInt(10);
+               values2[i][j] = random.nextInt(10);
+            }
+         double v1 = Double.NaN, v2 = Double.NaN;
+         Matrix c3 = null;
+         ch08.MatMult.v2.Matrix c2 = null;
+         if (n <= naiveLimit)
+         {
+            ch08.MatMult.v1.Matrix a1 = new ch08.MatMult.v1.Matrix(n, n);
+            ch08.MatMult.v1.Matrix b1 = new ch08.MatMult.v1.Matrix(n, n);
+            ch08.MatMult.v2.Matrix a2 = new ch08.MatMult.v2.Matrix(n, n);
+            ch08.MatMult.v2.Matrix b2 = new ch08.MatMult.v2.Matrix(n, n);
+            for (int i = 0; i < n; i++)
+               for (int j = 0; j < n; j++)
+               {
+                  a1.setValue(i, j, values[i][j]);
+                  b1.setValue(i, j, values2[i][j]);
+                  a2.setValue(i, j, values[i][j]);
+                  b2.setValue(i, j, values2[i][j]);
+               }
+            v1 = Double.MAX_VALUE;
+            v2 = Double.MAX_VALUE;
+            for (int run = 0; run < RUNS; run++)
+            {
+               long start = System.nanoTime();
+               ch08.MatMult.v1.MatMult.multiply(a1, b1);
+               v1 = Math.min(v1, (System.nanoTime() - start) / 1e6);
+               c2 = new ch08.MatMult.v2.Matrix(n, n);
+               start = System.nanoTime();
+               pool.invoke(new ch08.MatMult.v2.MatMult(a2, b2, c2));
+               v2 = Math.min(v2, (System.nanoTime() - start) / 1e6);
+            }
+         }
+         Matrix a3 = new Matrix(n, n), b3 = new Matrix(n, n);
+         for (int i = 0; i < n; i++)
+            for (int j = 0; j < n; j++)
+            {
+               a3.setValue(i, j, values[i][j]);
+               b3.setValue(i, j, values2[i][j]);
+            }
+         double v3 = Double.MAX_VALUE;
+         for (int run = 0; run < RUNS; run++)
+         {
+            c3 = new Matrix(n, n);
+            long start = System.nanoTime();
+            pool.invoke(new MatMult(a3, b3, c3, blockSize));
+            v3 = Math.min(v3, (System.nanoTime() - start) / 1e6);
+         }
+         if (c2 != null)
+            for (int i = 0; i < n; i++)
+               for (int j = 0; j < n; j++)
+                  if (c2.getValue(i, j) != c3.getValue(i, j))
+                     throw new AssertionError("v2 and v3 differ at " + i + 
+                                              "," + j);
+         System.out.printf("%6d %12.1f %12.1f %12.1f%n", n, v1, v2, v3);
+      }
+      pool.shutdown();
+   }
+}
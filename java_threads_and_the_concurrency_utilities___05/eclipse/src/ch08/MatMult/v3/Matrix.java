@@ -0,0 +1,45 @@
+package ch08.MatMult.v3;
+
+// Row-major matrix in one flat array, so a row is a contiguous run of ints
+public class Matrix
+{
+   private final int rows, cols;
+   private final int[] values;
+
+   public Matrix(int nrows, int ncols)
+   {
+      if (nrows <= 0 || ncols <= 0)
+         throw new IllegalArgumentException("bad size: " + nrows + "x" + ncols);
+      if ((long) nrows * ncols > Integer.MAX_VALUE - 8)
+         throw new IllegalArgumentException("too large: " + nrows + "x" + ncols);
+      rows = nrows;
+      cols = ncols;
+      values = new int[nrows * ncols];
+   }
+
+   public int getCols()
+   {
+      return cols;
+   }
+
+   public int getRows()
+   {
+      return rows;
+   }
+
+   public int getValue(int row, int col)
+   {
+      return values[row * cols + col];
+   }
+
+   public void setValue(int row, int col, int value)
+   {
+      values[row * cols + col] = value;
+   }
+
+   // Backing array for kernels in this package; element (r, c) is at r * cols + c
+   int[] values()
+   {
+      return values;
+   }
+}
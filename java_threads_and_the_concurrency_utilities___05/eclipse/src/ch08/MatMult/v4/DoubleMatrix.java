@@ -0,0 +1,94 @@
+package ch08.MatMult.v4;
+
+public class DoubleMatrix extends FlatMatrix
+{
+   private final double[] values;
+
+   public DoubleMatrix(int nrows, int ncols)
+   {
+      super(nrows, ncols);
+      values = new double[nrows * ncols];
+   }
+
+   public double getValue(int row, int col)
+   {
+      return values[index(row, col)];
+   }
+
+   public void setValue(int row, int col, double value)
+   {
+      values[index(row, col)] = value;
+   }
+
+   @Override
+   void multiplyAdd(FlatMatrix a, FlatMatrix b, int row0, int row1, int col0,
+                    int col1, int blockSize)
+   {
+      double[] av = ((DoubleMatrix) a).values, bv = ((DoubleMatrix) b).values, cv = values;
+      int n = a.cols, bCols = b.cols;
+      for (int k0 = 0; k0 < n; k0 += blockSize)
+      {
+         int k1 = Math.min(k0 + blockSize, n);
+         for (int i = row0; i < row1; i++)
+         {
+            int aRow = i * n, cRow = i * bCols;
+            for (int k = k0; k < k1; k++)
+            {
+               double aik = av[aRow + k];
+               int bRow = k * bCols;
+               for (int j = col0; j < col1; j++)
+                  cv[cRow + j] += aik * bv[bRow + j];
+            }
+         }
+      }
+   }
+
+   @Override
+   DoubleMatrix like(int nrows, int ncols)
+   {
+      return new DoubleMatrix(nrows, ncols);
+   }
+
+   @Override
+   DoubleMatrix copy(int row, int col, int nrows, int ncols)
+   {
+      DoubleMatrix m = new DoubleMatrix(nrows, ncols);
+      int r1 = Math.min(nrows, rows - row), c1 = Math.min(ncols, cols - col);
+      for (int r = 0; r < r1 && c1 > 0; r++)
+         System.arraycopy(values, index(row + r, col), m.values, r * ncols, c1);
+      return m;
+   }
+
+   @Override
+   void paste(int row, int col, FlatMatrix src)
+   {
+      DoubleMatrix s = (DoubleMatrix) src;
+      int r1 = Math.min(s.rows, rows - row), c1 = Math.min(s.cols, cols - col);
+      for (int r = 0; r < r1 && c1 > 0; r++)
+         System.arraycopy(s.values, r * s.cols, values, index(row + r, col), c1);
+   }
+
+   @Override
+   DoubleMatrix plus(FlatMatrix m)
+   {
+      checkSameSize(m);
+      double[] mv = ((DoubleMatrix) m).values;
+      DoubleMatrix sum = new DoubleMatrix(rows, cols);
+      double[] v = values, rv = sum.values;
+      for (int i = 0; i < v.length; i++)
+         rv[i] = v[i] + mv[i];
+      return sum;
+   }
+
+   @Override
+   DoubleMatrix minus(FlatMatrix m)
+   {
+      checkSameSize(m);
+      double[] mv = ((DoubleMatrix) m).values;
+      DoubleMatrix difference = new DoubleMatrix(rows, cols);
+      double[] v = values, rv = difference.values;
+      for (int i = 0; i < v.length; i++)
+         rv[i] = v[i] - mv[i];
+      return difference;
+   }
+}
@@ -0,0 +1,68 @@
+package ch08.MatMult.v4;
+
+// Storage shared by the typed matrices: rows x cols elements held row-major 
+// in one flat primitive array owned by the subclass, so element (r, c) is at 
+// index(r, c) = r * cols + c and every row is contiguous. The package-private 
+// operations are the kernels MatMult and Strassen are built from; each 
+// subclass implements them as plain counted loops over its arrays, the shape 
+// the JIT's superword pass turns into SIMD code.
+public abstract class FlatMatrix
+{
+   protected final int rows, cols;
+
+   protected FlatMatrix(int nrows, int ncols)
+   {
+      if (nrows <= 0 || ncols <= 0)
+         throw new IllegalArgumentException("bad size: " + nrows + "x" + ncols);
+      if ((long) nrows * ncols > Integer.MAX_VALUE - 8)
+         throw new IllegalArgumentException("too large: " + nrows + "x" + ncols);
+      rows = nrows;
+      cols = ncols;
+   }
+
+   public int getCols()
+   {
+      return cols;
+   }
+
+   public int getRows()
+   {
+      return rows;
+   }
+
+   public boolean isSquare()
+   {
+      return rows == cols;
+   }
+
+   protected int index(int row, int col)
+   {
+      return row * cols + col;
+   }
+
+   // this += a * b, restricted to rows [row0, row1) and columns [col0, col1) 
+   // of this, walking k in blockSize-wide slices
+   abstract void multiplyAdd(FlatMatrix a, FlatMatrix b, int row0, int row1,
+                             int col0, int col1, int blockSize);
+
+   // New zero matrix of the same element type
+   abstract FlatMatrix like(int nrows, int ncols);
+
+   // nrows x ncols copy starting at (row, col); cells past this matrix's 
+   // edge are zero, which is how Strassen pads
+   abstract FlatMatrix copy(int row, int col, int nrows, int ncols);
+
+   // Copies src into this starting at (row, col), dropping whatever falls 
+   // past this matrix's edge
+   abstract void paste(int row, int col, FlatMatrix src);
+
+   abstract FlatMatrix plus(FlatMatrix m);
+
+   abstract FlatMatrix minus(FlatMatrix m);
+
+   void checkSameSize(FlatMatrix m)
+   {
+      if (m.rows != rows || m.cols != cols)
+         throw new IllegalArgumentException("size mismatch");
+   }
+}
@@ -0,0 +1,127 @@
+package ch08.MatMult.v4;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+// v3's blocked fork/join multiply over any FlatMatrix: adds a * b into c by 
+// halving c down to blockSize x blockSize leaves, each computed by the 
+// matrix type's own i-k-j kernel
+public class MatMult extends RecursiveAction
+{
+   public static final int DEFAULT_BLOCK_SIZE = 128;
+
+   private final FlatMatrix a, b, c;
+   private final int row0, row1, col0, col1;
+   private final int blockSize;
+
+   public MatMult(FlatMatrix a, FlatMatrix b, FlatMatrix c)
+   {
+      this(a, b, c, DEFAULT_BLOCK_SIZE);
+   }
+
+   public MatMult(FlatMatrix a, FlatMatrix b, FlatMatrix c, int blockSize)
+   {
+      this(a, b, c, 0, a.getRows(), 0, b.getCols(), blockSize);
+      if (a.getClass() != b.getClass() || a.getClass() != c.getClass())
+         throw new IllegalArgumentException("element type mismatch");
+      if (a.getCols() != b.getRows())
+         throw new IllegalArgumentException("rows/columns mismatch");
+      if (c.getRows() != a.getRows() || c.getCols() != b.getCols())
+         throw new IllegalArgumentException("result size mismatch");
+      if (blockSize <= 0)
+         throw new IllegalArgumentException("blockSize must be positive");
+   }
+
+   private MatMult(FlatMatrix a, FlatMatrix b, FlatMatrix c, int row0,
+                   int row1, int col0, int col1, int blockSize)
+   {
+      this.a = a;
+      this.b = b;
+      this.c = c;
+      this.row0 = row0;
+      this.row1 = row1;
+      this.col0 = col0;
+      this.col1 = col1;
+      this.blockSize = blockSize;
+   }
+
+   @Override
+   public void compute()
+   {
+      int rows = row1 - row0, cols = col1 - col0;
+      if (rows <= blockSize && cols <= blockSize)
+         c.multiplyAdd(a, b, row0, row1, col0, col1, blockSize);
+      else if (rows >= cols)
+      {
+         int mid = (row0 + row1) >>> 1;
+         invokeAll(new MatMult(a, b, c, row0, mid, col0, col1, blockSize),
+                   new MatMult(a, b, c, mid, row1, col0, col1, blockSize));
+      }
+      else
+      {
+         int mid = (col0 + col1) >>> 1;
+         invokeAll(new MatMult(a, b, c, row0, row1, col0, mid, blockSize),
+                   new MatMult(a, b, c, row0, row1, mid, col1, blockSize));
+      }
+   }
+
+   public static <M extends FlatMatrix> M multiply(M a, M b)
+   {
+      @SuppressWarnings("unchecked")
+      M c = (M) a.like(a.getRows(), b.getCols());
+      ForkJoinPool.commonPool().invoke(new MatMult(a, b, c));
+      return c;
+   }
+
+   public static void dump(LongMatrix m)
+   {
+      for (int i = 0; i < m.getRows(); i++)
+      {
+         for (int j = 0; j < m.getCols(); j++)
+            System.out.print(m.getValue(i, j) + " ");
+         System.out.println();
+      }
+      System.out.println();
+   }
+
+   public static void dump(DoubleMatrix m)
+   {
+      for (int i = 0; i < m.getRows(); i++)
+      {
+         for (int j = 0; j < m.getCols(); j++)
+            System.out.printf("%.3f ", m.getValue(i, j));
+         System.out.println();
+      }
+      System.out.println();
+   }
+
+   public static void main(String[] args)
+   {
+      LongMatrix a = new LongMatrix(2, 2);
+      a.setValue(0, 0, 3_000_000_000L); // | 3e9 1 |
+      a.setValue(0, 1, 1);              // | 2   1 |
+      a.setValue(1, 0, 2);
+      a.setValue(1, 1, 1);
+      dump(a);
+      LongMatrix b = new LongMatrix(2, 2);
+      b.setValue(0, 0, 3); // | 3 0 |
+      b.setValue(1, 0, 0); // | 0 4 |
+      b.setValue(0, 1, 0);
+      b.setValue(1, 1, 4);
+      dump(b);
+      dump(multiply(a, b)); // 9e9 does not fit in an int
+      dump(Strassen.multiply(a, b, 1, 1));
+      DoubleMatrix x = new DoubleMatrix(2, 3);
+      x.setValue(0, 0, 0.5); // | 0.5 1.5 2.5 |
+      x.setValue(0, 1, 1.5); // | 1   2   3   |
+      x.setValue(0, 2, 2.5);
+      x.setValue(1, 0, 1);
+      x.setValue(1, 1, 2);
+      x.setValue(1, 2, 3);
+      DoubleMatrix y = new DoubleMatrix(3, 1);
+      y.setValue(0, 0, 2); // | 2 |
+      y.setValue(1, 0, 2); // | 2 |
+      y.setValue(2, 0, 2); // | 2 |
+      dump(multiply(x, y));
+   }
+}
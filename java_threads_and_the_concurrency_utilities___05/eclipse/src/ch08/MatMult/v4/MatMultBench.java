@@ -0,0 +1,73 @@
+package ch08.MatMult.v4;
+
+import java.util.Random;
+
+// Times the blocked multiply against Strassen on n x n long and double 
+// matrices, checking that the long results agree exactly and reporting the 
+// largest double difference. Usage:
+//    MatMultBench [threshold [n...]]
+public class MatMultBench
+{
+   private static final int RUNS = 3;
+
+   public static void main(String[] args)
+   {
+      int threshold = args.length > 0 ? Integer.parseInt(args[0])
+                                      : Strassen.DEFAULT_THRESHOLD;
+      int[] sizes = { 256, 512, 1024, 2048, 4096 };
+      if (args.length > 1)
+      {
+         sizes = new int[args.length - 1];
+         for (int i = 1; i < args.length; i++)
+            sizes[i - 1] = Integer.parseInt(args[i]);
+      }
+      System.out.printf("%6s %14s %14s %14s %14s %12s%n", "n", "long ms",
+                        "long strassen", "double ms", "double strassen",
+                        "max diff");
+      for (int n : sizes)
+      {
+         Random random = new Random(n);
+         LongMatrix la = new LongMatrix(n, n), lb = new LongMatrix(n, n);
+         DoubleMatrix da = new DoubleMatrix(n, n), db = new DoubleMatrix(n, n);
+         for (int i = 0; i < n; i++)
+            for (int j = 0; j < n; j++)
+            {
+               la.setValue(i, j, random.nextInt());
+               lb.setValue(i, j, random.nextInt());
+               da.setValue(i, j, random.nextDouble());
+               db.setValue(i, j, random.nextDouble());
+            }
+         LongMatrix lc = null, ls = null;
+         DoubleMatrix dc = null, ds = null;
+         double lTime = Double.MAX_VALUE, lsTime = Double.MAX_VALUE;
+         double dTime = Double.MAX_VALUE, dsTime = Double.MAX_VALUE;
+         for (int run = 0; run < RUNS; run++)
+         {
+            long start = System.nanoTime();
+            lc = MatMult.multiply(la, lb);
+            lTime = Math.min(lTime, (System.nanoTime() - start) / 1e6);
+            start = System.nanoTime();
+            ls = Strassen.multiply(la, lb, threshold, MatMult.DEFAULT_BLOCK_SIZE);
+            lsTime = Math.min(lsTime, (System.nanoTime() - start) / 1e6);
+            start = System.nanoTime();
+            dc = MatMult.multiply(da, db);
+            dTime = Math.min(dTime, (System.nanoTime() - start) / 1e6);
+            start = System.nanoTime();
+            ds = Strassen.multiply(da, db, threshold, MatMult.DEFAULT_BLOCK_SIZE);
+            dsTime = Math.min(dsTime, (System.nanoTime() - start) / 1e6);
+         }
+         double maxDiff = 0;
+         for (int i = 0; i < n; i++)
+            for (int j = 0; j < n; j++)
+            {
+               if (lc.getValue(i, j) != ls.getValue(i, j))
+                  throw new AssertionError("long results differ at " + i +
+                                           "," + j);
+               maxDiff = Math.max(maxDiff, Math.abs(dc.getValue(i, j) - 
+                                                    ds.getValue(i, j)));
+            }
+         System.out.printf("%6d %14.1f %14.1f %14.1f %14.1f %12.2e%n", n,
+                           lTime, lsTime, dTime, dsTime, maxDiff);
+      }
+   }
+}
@@ -0,0 +1,104 @@
+package ch08.MatMult.v4;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+// Strassen's multiply for square matrices: splits each operand into 
+// quadrants and forms the product from seven half-size products instead of 
+// eight, forked in parallel, falling back to the blocked MatMult once a side 
+// is at most threshold. Operands are zero-padded up front to threshold-sized 
+// leaves times a power of two so every level splits evenly. For long 
+// matrices the result is exact (it wraps exactly like the classical 
+// product); for double matrices it trades some rounding error for fewer 
+// multiplications, so keep threshold large.
+public class Strassen extends RecursiveTask<FlatMatrix>
+{
+   public static final int DEFAULT_THRESHOLD = 512;
+
+   private final FlatMatrix a, b;
+   private final int threshold, blockSize;
+
+   private Strassen(FlatMatrix a, FlatMatrix b, int threshold, int blockSize)
+   {
+      this.a = a;
+      this.b = b;
+      this.threshold = threshold;
+      this.blockSize = blockSize;
+   }
+
+   public static <M extends FlatMatrix> M multiply(M a, M b)
+   {
+      return multiply(a, b, DEFAULT_THRESHOLD, MatMult.DEFAULT_BLOCK_SIZE);
+   }
+
+   public static <M extends FlatMatrix> M multiply(M a, M b, int threshold,
+                                                   int blockSize)
+   {
+      if (a.getClass() != b.getClass())
+         throw new IllegalArgumentException("element type mismatch");
+      if (!a.isSquare() || !b.isSquare() || a.getRows() != b.getRows())
+         throw new IllegalArgumentException("Strassen needs equal square matrices");
+      if (threshold <= 0 || blockSize <= 0)
+         throw new IllegalArgumentException("threshold and blockSize must be positive");
+      int n = a.getRows(), leaf = n, levels = 0;
+      while (leaf > threshold)
+      {
+         leaf = (leaf + 1) / 2;
+         levels++;
+      }
+      int padded = leaf << levels;
+      FlatMatrix pa = padded == n ? a : a.copy(0, 0, padded, padded);
+      FlatMatrix pb = padded == n ? b : b.copy(0, 0, padded, padded);
+      FlatMatrix pc = ForkJoinPool.commonPool()
+                                  .invoke(new Strassen(pa, pb, threshold, blockSize));
+      if (padded == n)
+         return cast(a, pc);
+      FlatMatrix c = a.like(n, n);
+      c.paste(0, 0, pc);
+      return cast(a, c);
+   }
+
+   @SuppressWarnings("unchecked")
+   private static <M extends FlatMatrix> M cast(M type, FlatMatrix m)
+   {
+      return (M) m;
+   }
+
+   @Override
+   protected FlatMatrix compute()
+   {
+      int n = a.getRows();
+      if (n <= threshold)
+      {
+         FlatMatrix c = a.like(n, n);
+         new MatMult(a, b, c, blockSize).invoke();
+         return c;
+      }
+      int h = n / 2;
+      FlatMatrix a11 = a.copy(0, 0, h, h), a12 = a.copy(0, h, h, h),
+                 a21 = a.copy(h, 0, h, h), a22 = a.copy(h, h, h, h);
+      FlatMatrix b11 = b.copy(0, 0, h, h), b12 = b.copy(0, h, h, h),
+                 b21 = b.copy(h, 0, h, h), b22 = b.copy(h, h, h, h);
+      Strassen m1 = child(a11.plus(a22), b11.plus(b22));
+      Strassen m2 = child(a21.plus(a22), b11);
+      Strassen m3 = child(a11, b12.minus(b22));
+      Strassen m4 = child(a22, b21.minus(b11));
+      Strassen m5 = child(a11.plus(a12), b22);
+      Strassen m6 = child(a21.minus(a11), b11.plus(b12));
+      Strassen m7 = child(a12.minus(a22), b21.plus(b22));
+      invokeAll(m1, m2, m3, m4, m5, m6, m7);
+      FlatMatrix p1 = m1.join(), p2 = m2.join(), p3 = m3.join(), p4 = m4.join(),
+                 p5 = m5.join(), p6 = m6.join(), p7 = m7.join();
+      FlatMatrix c = a.like(n, n);
+      c.paste(0, 0, p1.plus(p4).minus(p5).plus(p7));
+      c.paste(0, h, p3.plus(p5));
+      c.paste(h, 0, p2.plus(p4));
+      c.paste(h, h, p1.minus(p2).plus(p3).plus(p6));
+      return c;
+   }
+
+   private Strassen child(FlatMatrix a, FlatMatrix b)
+   {
+      return new Strassen(a, b, threshold, blockSize);
+   }
+}